@@ -75,6 +75,7 @@ public class QuickCarpetClient implements QuickCarpetClientAPI {
 
     public void onLeaveServer() {
         tickSpeed = new TickSpeed(null);
+        pubSubListener.reset();
     }
 
     public void tick() {
@@ -13,9 +13,11 @@ import quickcarpet.api.QuickCarpetServerAPI;
 import quickcarpet.api.ServerEventListener;
 import quickcarpet.api.TelemetryProvider;
 import quickcarpet.api.network.server.ServerPluginChannelManager;
+import quickcarpet.helper.Benchmark;
 import quickcarpet.helper.Mobcaps;
 import quickcarpet.helper.TickSpeed;
 import quickcarpet.logging.LoggerManager;
+import quickcarpet.logging.loghelpers.PacketCounter;
 import quickcarpet.network.channels.RulesChannel;
 import quickcarpet.network.channels.StructureChannel;
 import quickcarpet.network.impl.PluginChannelManager;
@@ -86,17 +88,33 @@ public class QuickCarpetServer implements QuickCarpetServerAPI, ServerEventListe
     public void tick(MinecraftServer server) {
         try {
             tickSpeed.tick();
+            if (tickSpeed.isTurboWarping()) {
+                QuickCarpet.PUBSUB.updateHistory(server.getTicks());
+                return;
+            }
             HUDController.update(server);
             QuickCarpet.PUBSUB.update(server.getTicks());
+            pubSubMessenger.flush();
             StructureChannel.instance.tick();
         } catch (RuntimeException e) {
             LOG.error("Exception ticking " + Build.NAME, e);
         }
     }
 
+    /**
+     * Sends the state skipped during a turbo warp to all clients at once
+     */
+    public void flushTurboWarp() {
+        HUDController.update(server);
+        QuickCarpet.PUBSUB.updateAll();
+        pubSubMessenger.flush();
+        StructureChannel.instance.tick();
+    }
+
     @Override
     public void onServerLoaded(MinecraftServer server) {
         loggers.readSaveFile();
+        Benchmark.startFromProperties(server);
     }
 
     @Override
@@ -119,6 +137,7 @@ public class QuickCarpetServer implements QuickCarpetServerAPI, ServerEventListe
         try {
             loggers.onPlayerDisconnect(player);
             pluginChannels.onPlayerDisconnect(player);
+            PacketCounter.removePlayer(player.getEntityName());
         } catch (RuntimeException e) {
             LOG.error("Exception during onPlayerDisconnect for " + player.getEntityName(), e);
         }
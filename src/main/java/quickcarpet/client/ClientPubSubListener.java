@@ -1,10 +1,10 @@
 package quickcarpet.client;
 
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.Unpooled;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.network.listener.ClientPlayPacketListener;
 import net.minecraft.network.packet.s2c.play.CustomPayloadS2CPacket;
@@ -14,10 +14,15 @@ import org.apache.logging.log4j.Logger;
 import quickcarpet.QuickCarpetClient;
 import quickcarpet.api.network.client.ClientPluginChannelHandler;
 import quickcarpet.network.impl.PacketSplitter;
+import quickcarpet.pubsub.PubSubCodec;
+import quickcarpet.pubsub.PubSubHistory;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.*;
 import java.util.function.Consumer;
+import java.util.zip.InflaterInputStream;
 
 import static quickcarpet.pubsub.PubSubMessenger.*;
 
@@ -25,6 +30,9 @@ import static quickcarpet.pubsub.PubSubMessenger.*;
 public class ClientPubSubListener implements ClientPluginChannelHandler {
     private Logger LOG = LogManager.getLogger();
     private final QuickCarpetClient client = QuickCarpetClient.getInstance();
+    private PubSubCodec.Decoder decoder = new PubSubCodec.Decoder();
+    private final Queue<Consumer<Map<String, List<PubSubHistory.Sample>>>> backfillCallbacks = new ArrayDeque<>();
+    private int protocol = PROTOCOL_LEGACY;
 
     @Override
     public Identifier[] getChannels() {
@@ -36,8 +44,14 @@ public class ClientPubSubListener implements ClientPluginChannelHandler {
         PacketByteBuf buf = PacketSplitter.receive(netHandler, packet);
         if (buf == null) return;
         int type = buf.readVarInt();
-        if (type == PACKET_S2C_UPDATE) {
-            Map<String, Object> updates = parseUpdatePacket(buf);
+        if (type == PACKET_S2C_PROTOCOL) {
+            negotiateProtocol(buf.readVarInt());
+        } else if (type == PACKET_S2C_BACKFILL) {
+            Consumer<Map<String, List<PubSubHistory.Sample>>> callback = backfillCallbacks.poll();
+            Map<String, List<PubSubHistory.Sample>> backfill = parseBackfillPacket(buf);
+            if (callback != null && backfill != null) callback.accept(backfill);
+        } else if (type == PACKET_S2C_UPDATE || type == PACKET_S2C_UPDATE_COMPACT) {
+            Map<String, Object> updates = type == PACKET_S2C_UPDATE ? parseUpdatePacket(buf) : parseCompactUpdatePacket(buf);
             if (!onUpdate(updates, "minecraft.performance.tps", Number.class, tps -> client.tickSpeed.setTickRateGoal(tps.floatValue()))) {
                 onUpdate(updates, "carpet.tick-rate.tps-goal", Number.class, goal -> client.tickSpeed.setTickRateGoal(goal.floatValue()));
             }
@@ -53,56 +67,83 @@ public class ClientPubSubListener implements ClientPluginChannelHandler {
         return true;
     }
 
+    /**
+     * Forgets the negotiated protocol and its state, called when leaving a server
+     */
+    public void reset() {
+        decoder = new PubSubCodec.Decoder();
+        backfillCallbacks.clear();
+        protocol = PROTOCOL_LEGACY;
+    }
+
+    /**
+     * Renegotiating the same version keeps the decoder, the server keeps its encoder in that case
+     */
+    private void negotiateProtocol(int serverVersion) {
+        int version = Math.min(serverVersion, PROTOCOL_VERSION);
+        if (version != protocol) {
+            reset();
+            protocol = version;
+        }
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        buf.writeVarInt(PACKET_C2S_PROTOCOL);
+        buf.writeVarInt(protocol);
+        PacketSplitter.send(MinecraftClient.getInstance().getNetworkHandler(), CHANNEL_NAME, buf);
+    }
+
     private Map<String, Object> parseUpdatePacket(PacketByteBuf buf) {
         int numUpdates = buf.readVarInt();
         Map<String, Object> values = new LinkedHashMap<>(numUpdates);
         for (int i = 0; i < numUpdates; i++) {
             String name = buf.readString();
             int valueType = buf.readVarInt();
-            switch (valueType) {
-                case TYPE_NBT: {
-                    CompoundTag compound = buf.readCompoundTag();
-                    if (compound == null) break;
-                    if (compound.contains("")) {
-                        values.put(name, compound.get(""));
-                    } else {
-                        values.put(name, compound);
-                    }
-                    break;
-                }
-                case TYPE_STRING: {
-                    values.put(name, buf.readString());
-                    break;
-                }
-                case TYPE_INT: {
-                    values.put(name, buf.readInt());
-                    break;
-                }
-                case TYPE_FLOAT: {
-                    values.put(name, buf.readFloat());
-                    break;
-                }
-                case TYPE_LONG: {
-                    values.put(name, buf.readLong());
-                    break;
-                }
-                case TYPE_DOUBLE: {
-                    values.put(name, buf.readDouble());
-                    break;
-                }
-                case TYPE_BOOLEAN: {
-                    values.put(name, buf.readBoolean());
-                    break;
-                }
-                default: {
-                    LOG.warn("Could not parse pubsub update {} of type {}", name, valueType);
-                    return values;
-                }
+            try {
+                Object value = PubSubCodec.readValue(buf, valueType);
+                if (value != null) values.put(name, value);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Could not parse pubsub update {} of type {}", name, valueType);
+                return values;
             }
         }
         return values;
     }
 
+    private Map<String, Object> parseCompactUpdatePacket(PacketByteBuf buf) {
+        try {
+            return decoder.decode(buf);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Could not parse pubsub update", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    @Nullable
+    private Map<String, List<PubSubHistory.Sample>> parseBackfillPacket(PacketByteBuf buf) {
+        byte[] bytes = new byte[buf.readVarInt()];
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteBufInputStream(buf)))) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            LOG.warn("Could not decompress pubsub backfill", e);
+            return null;
+        }
+        PacketByteBuf data = new PacketByteBuf(Unpooled.wrappedBuffer(bytes));
+        data.readVarInt(); // resolution
+        int tick = data.readVarInt();
+        int numNodes = data.readVarInt();
+        Map<String, List<PubSubHistory.Sample>> backfill = new LinkedHashMap<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            String name = data.readString();
+            int numSamples = data.readVarInt();
+            List<PubSubHistory.Sample> samples = new ArrayList<>(numSamples);
+            for (int j = 0; j < numSamples; j++) {
+                int age = data.readVarInt();
+                samples.add(new PubSubHistory.Sample(tick - age, data.readDouble()));
+            }
+            backfill.put(name, samples);
+        }
+        return backfill;
+    }
+
     public void subscribe(String ...nodes) {
         PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
         buf.writeVarInt(PACKET_C2S_SUBSCRIBE);
@@ -111,6 +152,27 @@ public class ClientPubSubListener implements ClientPluginChannelHandler {
         PacketSplitter.send(MinecraftClient.getInstance().getNetworkHandler(), CHANNEL_NAME, buf);
     }
 
+    /**
+     * Requests the latest values of nodes that keep a history on the server.
+     * The server answers at most one request per second and caps the nodes and samples,
+     * see {@link quickcarpet.pubsub.PubSubMessenger#BACKFILL_MAX_NODES}
+     * @param amount Maximum number of samples per node
+     * @param callback Receives the samples of each node, oldest first
+     * @return Whether the server supports backfill requests
+     */
+    public boolean requestBackfill(PubSubHistory.Resolution resolution, int amount, Consumer<Map<String, List<PubSubHistory.Sample>>> callback, String ...nodes) {
+        if (protocol < PROTOCOL_HISTORY) return false;
+        backfillCallbacks.add(callback);
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        buf.writeVarInt(PACKET_C2S_BACKFILL);
+        buf.writeVarInt(resolution.ordinal());
+        buf.writeVarInt(amount);
+        buf.writeVarInt(nodes.length);
+        for (String node : nodes) buf.writeString(node);
+        PacketSplitter.send(MinecraftClient.getInstance().getNetworkHandler(), CHANNEL_NAME, buf);
+        return true;
+    }
+
     public void unsubscribe(String ...nodes) {
         PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
         buf.writeVarInt(PACKET_C2S_UNSUBSCRIBE);
@@ -3,11 +3,21 @@ package quickcarpet.commands;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import quickcarpet.helper.Benchmark;
+import quickcarpet.helper.TickFreeze;
 import quickcarpet.helper.TickSpeed;
 import quickcarpet.settings.Settings;
 import quickcarpet.utils.CarpetProfiler;
+import quickcarpet.utils.profiler.AllocationCounter;
+import quickcarpet.utils.profiler.TickLengthRecorder;
+
+import java.util.Collection;
 
 import static com.mojang.brigadier.arguments.FloatArgumentType.floatArg;
 import static com.mojang.brigadier.arguments.FloatArgumentType.getFloat;
@@ -16,6 +26,10 @@ import static com.mojang.brigadier.arguments.IntegerArgumentType.integer;
 import static com.mojang.brigadier.arguments.StringArgumentType.getString;
 import static com.mojang.brigadier.arguments.StringArgumentType.greedyString;
 import static net.minecraft.command.CommandSource.suggestMatching;
+import static net.minecraft.command.argument.BlockPosArgumentType.blockPos;
+import static net.minecraft.command.argument.BlockPosArgumentType.getBlockPos;
+import static net.minecraft.command.argument.DimensionArgumentType.dimension;
+import static net.minecraft.command.argument.DimensionArgumentType.getDimensionArgument;
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 import static quickcarpet.utils.Messenger.*;
@@ -29,7 +43,13 @@ public class TickCommand {
                 .executes(c -> sendCurrentTPS(c.getSource()))
                 .then(argument("rate", floatArg(0.1F))
                     .suggests((c, b) -> suggestMatching(new String[]{"20"},b))
-                    .executes(c -> setTps(c.getSource(), getFloat(c, "rate")))))
+                    .executes(c -> setTps(c.getSource(), getFloat(c, "rate"))))
+                .then(literal("auto")
+                    .executes(c -> setGovernor(c.getSource(), 20, 100))
+                    .then(argument("min", floatArg(0.1F))
+                        .executes(c -> setGovernor(c.getSource(), getFloat(c, "min"), 100))
+                        .then(argument("max", floatArg(0.1F))
+                            .executes(c -> setGovernor(c.getSource(), getFloat(c, "min"), getFloat(c, "max")))))))
             .then(literal("warp").requires(s -> s.hasPermissionLevel(Settings.commandTickManipulate))
                 .executes(c-> displayStatus(c.getSource()))
                 .then(argument("ticks", integer(0,4000000))
@@ -38,36 +58,129 @@ public class TickCommand {
                     .then(argument("tail command", greedyString())
                         .executes(c -> setWarp(c.getSource(), getInteger(c,"ticks"), getString(c, "tail command"))))))
             .then(literal("freeze").requires(s -> s.hasPermissionLevel(Settings.commandTickManipulate))
-                .executes( (c)-> toggleFreeze(c.getSource())))
+                .executes( (c)-> toggleFreeze(c.getSource()))
+                .then(literal("dimension")
+                    .executes(c -> toggleFreezeDimension(c.getSource(), c.getSource().getWorld()))
+                    .then(argument("dimension", dimension())
+                        .executes(c -> toggleFreezeDimension(c.getSource(), getDimensionArgument(c, "dimension")))))
+                .then(literal("area")
+                    .then(argument("from", blockPos())
+                        .then(argument("to", blockPos())
+                            .executes(c -> freezeArea(c.getSource(), getBlockPos(c, "from"), getBlockPos(c, "to"))))))
+                .then(literal("list")
+                    .executes(c -> listFrozen(c.getSource())))
+                .then(literal("remove")
+                    .then(argument("id", integer(1))
+                        .executes(c -> unfreeze(c.getSource(), getInteger(c, "id")))))
+                .then(literal("clear")
+                    .executes(c -> clearFrozen(c.getSource()))))
             .then(literal("step").requires(s -> s.hasPermissionLevel(Settings.commandTickManipulate))
                 .executes((c) -> step(1))
                 .then(argument("ticks", integer(1,72000))
                     .suggests((c, b) -> suggestMatching(new String[]{"20"},b))
-                    .executes(c -> step(getInteger(c, "ticks")))))
+                    .executes(c -> step(getInteger(c, "ticks"))))
+                .then(literal("frozen")
+                    .then(argument("id", integer(1))
+                        .executes(c -> stepFrozen(c.getSource(), getInteger(c, "id"), 1))
+                        .then(argument("ticks", integer(1, 72000))
+                            .executes(c -> stepFrozen(c.getSource(), getInteger(c, "id"), getInteger(c, "ticks")))))))
             .then(literal("health")
                 .executes(c -> healthReport(c.getSource(), 100))
                 .then(argument("ticks", integer(20, 24000))
-                    .executes(c -> healthReport(c.getSource(), getInteger(c, "ticks")))))
+                    .executes(c -> healthReport(c.getSource(), getInteger(c, "ticks"))))
+                .then(literal("last")
+                    .executes(c -> healthHistory(c.getSource(), 1))
+                    .then(argument("minutes", integer(1, CarpetProfiler.HISTORY_MINUTES))
+                        .suggests((c, b) -> suggestMatching(new String[]{"1", "5", "15"}, b))
+                        .executes(c -> healthHistory(c.getSource(), getInteger(c, "minutes"))))))
+            .then(literal("spikes")
+                .executes(c -> listLagSpikes(c.getSource()))
+                .then(argument("id", integer(1))
+                    .executes(c -> showLagSpike(c.getSource(), getInteger(c, "id")))))
             .then(literal("entities")
                 .executes(c -> healthEntities(c.getSource(), 100))
                 .then(argument("ticks", integer(20, 24000))
                     .executes(c -> healthEntities(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("allocations")
+                .executes(c -> healthAllocations(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthAllocations(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("trace").requires(s -> s.hasPermissionLevel(Settings.commandTickManipulate))
+                .executes(c -> trace(c.getSource(), 200))
+                .then(argument("ticks", integer(1, 24000))
+                    .executes(c -> trace(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("benchmark").requires(s -> s.hasPermissionLevel(Settings.commandTickManipulate))
+                .then(argument("ticks", integer(20, 4000000))
+                    .suggests((c, b) -> suggestMatching(new String[]{"1200", "6000"}, b))
+                    .executes(c -> benchmark(c.getSource(), getInteger(c, "ticks"), false))
+                    .then(literal("freeze")
+                        .executes(c -> benchmark(c.getSource(), getInteger(c, "ticks"), true)))))
+            .then(literal("scheduled")
+                .executes(c -> healthScheduledTicks(c.getSource(), 100, false))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthScheduledTicks(c.getSource(), getInteger(c, "ticks"), false))
+                    .then(literal("chunks")
+                        .executes(c -> healthScheduledTicks(c.getSource(), getInteger(c, "ticks"), true)))))
+            .then(literal("randomticks")
+                .executes(c -> healthRandomTicks(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthRandomTicks(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("network")
+                .executes(c -> healthNetwork(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthNetwork(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("chunkio")
+                .executes(c -> healthChunkIo(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthChunkIo(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("updates")
+                .executes(c -> healthUpdates(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthUpdates(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("commands")
+                .executes(c -> healthCommands(c.getSource(), 100))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthCommands(c.getSource(), getInteger(c, "ticks")))))
+            .then(literal("chunks")
+                .executes(c -> healthChunks(c.getSource(), 100, false))
+                .then(argument("ticks", integer(20, 24000))
+                    .executes(c -> healthChunks(c.getSource(), getInteger(c, "ticks"), false))
+                    .then(literal("positions")
+                        .executes(c -> healthChunks(c.getSource(), getInteger(c, "ticks"), true)))))
             .then(literal("measure")
                 .executes(c -> measureCurrent(c.getSource()))
+                .then(literal("last")
+                    .then(argument("ticks", integer(1, TickLengthRecorder.MAX_TICKS))
+                        .executes(c -> measureLast(c.getSource(), getInteger(c, "ticks")))))
                 .then(argument("ticks", integer(10, 24000))
                     .executes(c -> measure(c.getSource(), getInteger(c, "ticks")))));
         dispatcher.register(tick);
     }
 
     private static int setTps(ServerCommandSource source, float tps) {
+        TickSpeed.getServerTickSpeed().disableGovernor();
         TickSpeed.getServerTickSpeed().setTickRateGoal(tps);
         sendCurrentTPS(source);
         return (int) tps;
     }
 
+    private static int setGovernor(ServerCommandSource source, float min, float max) {
+        if (min > max) {
+            m(source, ts("command.tick.governor.invalid", Formatting.RED, String.format("%.1f", min), String.format("%.1f", max)));
+            return 0;
+        }
+        TickSpeed tickSpeed = TickSpeed.getServerTickSpeed();
+        tickSpeed.setGovernor(min, max);
+        m(source, t("command.tick.governor", formats("%.1f", Formatting.BOLD, tickSpeed.getGovernorMin()), formats("%.1f", Formatting.BOLD, tickSpeed.getGovernorMax())));
+        return (int) tickSpeed.tickRateGoal;
+    }
+
     private static int sendCurrentTPS(ServerCommandSource source) {
-        float tickRateGoal = TickSpeed.getServerTickSpeed().tickRateGoal;
-        m(source, t("command.tick.current", formats("%.1f", Formatting.BOLD, tickRateGoal)));
+        TickSpeed tickSpeed = TickSpeed.getServerTickSpeed();
+        float tickRateGoal = tickSpeed.tickRateGoal;
+        MutableText message = t("command.tick.current", formats("%.1f", Formatting.BOLD, tickRateGoal));
+        if (tickSpeed.isGoverned()) message.append(ts("command.tick.governor.status", GRAY_ITALIC, String.format("%.1f", tickSpeed.getGovernorMin()), String.format("%.1f", tickSpeed.getGovernorMax())));
+        m(source, message);
         return (int) tickRateGoal;
     }
 
@@ -111,18 +224,171 @@ public class TickCommand {
         return 1;
     }
 
+    private static int toggleFreezeDimension(ServerCommandSource source, ServerWorld world) {
+        TickFreeze.Area area = TickSpeed.getServerTickSpeed().frozenAreas.toggleDimension(world.getRegistryKey());
+        if (area == null) {
+            m(source, ts("command.tick.unfreeze.dimension", GRAY_ITALIC, world.getRegistryKey().getValue()));
+            return 0;
+        }
+        m(source, ts("command.tick.freeze.dimension", GRAY_ITALIC, world.getRegistryKey().getValue(), area.id));
+        return area.id;
+    }
+
+    private static int freezeArea(ServerCommandSource source, BlockPos from, BlockPos to) {
+        ServerWorld world = source.getWorld();
+        TickFreeze.Area area = TickSpeed.getServerTickSpeed().frozenAreas.freezeArea(world.getRegistryKey(), new BlockBox(from, to));
+        m(source, ts("command.tick.freeze.area", GRAY_ITALIC, formatBox(area.box), world.getRegistryKey().getValue(), area.id));
+        return area.id;
+    }
+
+    private static int listFrozen(ServerCommandSource source) {
+        Collection<TickFreeze.Area> areas = TickSpeed.getServerTickSpeed().frozenAreas.getAll();
+        if (areas.isEmpty()) {
+            m(source, ts("command.tick.freeze.list.none", Formatting.YELLOW));
+            return 0;
+        }
+        for (TickFreeze.Area area : areas) {
+            MutableText line = area.box == null
+                ? t("command.tick.freeze.list.dimension", area.id, area.dimension.getValue())
+                : t("command.tick.freeze.list.area", area.id, formatBox(area.box), area.dimension.getValue());
+            if (area.isStepping()) line.append(ts("command.tick.freeze.list.stepping", GRAY_ITALIC));
+            m(source, line);
+        }
+        return areas.size();
+    }
+
+    private static int unfreeze(ServerCommandSource source, int id) {
+        if (TickSpeed.getServerTickSpeed().frozenAreas.remove(id) == null) {
+            m(source, ts("command.tick.freeze.unknown", Formatting.RED, id));
+            return 0;
+        }
+        m(source, ts("command.tick.freeze.removed", GRAY_ITALIC, id));
+        return 1;
+    }
+
+    private static int clearFrozen(ServerCommandSource source) {
+        TickFreeze frozenAreas = TickSpeed.getServerTickSpeed().frozenAreas;
+        int count = frozenAreas.getAll().size();
+        frozenAreas.clear();
+        m(source, ts("command.tick.freeze.cleared", GRAY_ITALIC, count));
+        return count;
+    }
+
+    private static int stepFrozen(ServerCommandSource source, int id, int ticks) {
+        TickFreeze frozenAreas = TickSpeed.getServerTickSpeed().frozenAreas;
+        TickFreeze.Area area = frozenAreas.get(id);
+        if (area == null) {
+            m(source, ts("command.tick.freeze.unknown", Formatting.RED, id));
+            return 0;
+        }
+        frozenAreas.step(area, ticks);
+        m(source, ts("command.tick.step.frozen", GRAY_ITALIC, id, ticks));
+        return 1;
+    }
+
+    private static String formatBox(BlockBox box) {
+        return box.minX + " " + box.minY + " " + box.minZ + " - " + box.maxX + " " + box.maxY + " " + box.maxZ;
+    }
+
+    private static int startReport(ServerCommandSource source, CarpetProfiler.ReportType type, int ticks, boolean positions) {
+        if (!CarpetProfiler.startTickReport(source.getMinecraftServer(), type, ticks, positions)) {
+            m(source, ts("command.tick.report.busy", Formatting.RED));
+            return 0;
+        }
+        return 1;
+    }
+
     private static int healthReport(ServerCommandSource source, int ticks) {
-        CarpetProfiler.startTickReport(source.getMinecraftServer(), CarpetProfiler.ReportType.HEALTH, ticks);
+        return startReport(source, CarpetProfiler.ReportType.HEALTH, ticks, false);
+    }
+
+    private static int healthHistory(ServerCommandSource source, int minutes) {
+        return CarpetProfiler.printHistoryReport(source, minutes * 60 * 20);
+    }
+
+    private static int listLagSpikes(ServerCommandSource source) {
+        Collection<CarpetProfiler.LagSpike> spikes = CarpetProfiler.getLagSpikes();
+        if (spikes.isEmpty()) {
+            m(source, ts("command.tick.spikes.none", Formatting.YELLOW));
+            return 0;
+        }
+        for (CarpetProfiler.LagSpike spike : spikes) m(source, spike.format());
+        return spikes.size();
+    }
+
+    private static int showLagSpike(ServerCommandSource source, int id) {
+        CarpetProfiler.LagSpike spike = CarpetProfiler.getLagSpike(id);
+        if (spike == null) {
+            m(source, ts("command.tick.spikes.unknown", Formatting.RED, id));
+            return 0;
+        }
+        m(source, spike.format());
+        send(source, spike.getReport());
         return 1;
     }
 
     private static int healthEntities(ServerCommandSource source, int ticks) {
-        CarpetProfiler.startTickReport(source.getMinecraftServer(), CarpetProfiler.ReportType.ENTITIES, ticks);
+        return startReport(source, CarpetProfiler.ReportType.ENTITIES, ticks, false);
+    }
+
+    private static int healthAllocations(ServerCommandSource source, int ticks) {
+        if (!AllocationCounter.isAvailable()) {
+            m(source, ts("command.tick.allocations.unavailable", Formatting.RED, System.getProperty("java.vm.name")));
+            return 0;
+        }
+        return startReport(source, CarpetProfiler.ReportType.ALLOCATIONS, ticks, false);
+    }
+
+    private static int trace(ServerCommandSource source, int ticks) {
+        if (startReport(source, CarpetProfiler.ReportType.TRACE, ticks, false) == 0) return 0;
+        m(source, t("command.tick.trace.start", ticks));
         return 1;
     }
 
+    private static int benchmark(ServerCommandSource source, int ticks, boolean freeze) {
+        if (!Benchmark.start(source.getMinecraftServer(), source, ticks, freeze, false)) {
+            m(source, ts("command.tick.benchmark.busy", Formatting.RED));
+            return 0;
+        }
+        m(source, t("command.tick.benchmark.start", ticks));
+        return 1;
+    }
+
+    private static int healthScheduledTicks(ServerCommandSource source, int ticks, boolean chunks) {
+        return startReport(source, CarpetProfiler.ReportType.SCHEDULED_TICKS, ticks, chunks);
+    }
+
+    private static int healthRandomTicks(ServerCommandSource source, int ticks) {
+        return startReport(source, CarpetProfiler.ReportType.RANDOM_TICKS, ticks, false);
+    }
+
+    private static int healthNetwork(ServerCommandSource source, int ticks) {
+        return startReport(source, CarpetProfiler.ReportType.NETWORK, ticks, false);
+    }
+
+    private static int healthChunkIo(ServerCommandSource source, int ticks) {
+        return startReport(source, CarpetProfiler.ReportType.CHUNK_IO, ticks, false);
+    }
+
+    private static int healthUpdates(ServerCommandSource source, int ticks) {
+        return startReport(source, CarpetProfiler.ReportType.UPDATES, ticks, false);
+    }
+
+    private static int healthCommands(ServerCommandSource source, int ticks) {
+        return startReport(source, CarpetProfiler.ReportType.COMMANDS, ticks, false);
+    }
+
+    private static int healthChunks(ServerCommandSource source, int ticks, boolean positions) {
+        return startReport(source, CarpetProfiler.ReportType.CHUNKS, ticks, positions);
+    }
+
     private static int measureCurrent(ServerCommandSource source) {
-        printMSPTStats(source, TickSpeed.getMSPTStats(source.getMinecraftServer()));
+        printMSPTStats(source, TickSpeed.getServerTickSpeed().getMSPTStats(100));
+        return 1;
+    }
+
+    private static int measureLast(ServerCommandSource source, int ticks) {
+        printMSPTStats(source, TickSpeed.getServerTickSpeed().getMSPTStats(ticks));
         return 1;
     }
 
@@ -136,7 +402,8 @@ public class TickCommand {
         m(source, t("command.tick.stats.loadavg"), s(": ", Formatting.GRAY),
             formats("%.3f", Formatting.AQUA, TickSpeed.getExponential1MinuteMSPT()), s(", ", Formatting.GRAY),
             formats("%.3f", Formatting.AQUA, TickSpeed.getExponential5MinuteMSPT()), s(", ", Formatting.GRAY),
-            formats("%.3f", Formatting.AQUA, TickSpeed.getExponential15MinuteMSPT())
+            formats("%.3f", Formatting.AQUA, TickSpeed.getExponential15MinuteMSPT()), s(", ", Formatting.GRAY),
+            formats("%.3f", Formatting.AQUA, TickSpeed.getExponential60MinuteMSPT())
         );
         m(source, t("command.tick.stats.minavgmax"), s(": ", Formatting.GRAY),
             formats("%.3f", Formatting.AQUA, stats.min), s(", ", Formatting.GRAY),
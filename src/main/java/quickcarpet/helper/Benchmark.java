@@ -0,0 +1,192 @@
+package quickcarpet.helper;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.MutableText;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.world.level.ServerWorldProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import quickcarpet.Build;
+import quickcarpet.api.settings.ParsedRule;
+import quickcarpet.settings.Settings;
+import quickcarpet.utils.CarpetProfiler;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import static quickcarpet.utils.Messenger.*;
+
+/**
+ * Deterministic benchmark: warps a fixed number of ticks while the profiler records
+ * a {@link CarpetProfiler.ReportType#BENCHMARK} report, then writes it as JSON to {@code <world>/benchmarks}.
+ * <p>
+ * Started with {@code /tick benchmark} or, for headless runs, with {@code -Dquickcarpet.benchmark=<ticks>}
+ * (and optionally {@code -Dquickcarpet.benchmark.freeze=true}) which stops the server after the report is written.
+ * Headless runs start before any regular ticks were measured, so they report no turbo speedup.
+ */
+public final class Benchmark {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final WorldSavePath BENCHMARKS = new WorldSavePath("benchmarks");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    public static final String TICKS_PROPERTY = "quickcarpet.benchmark";
+    public static final String FREEZE_PROPERTY = "quickcarpet.benchmark.freeze";
+
+    /**
+     * Written on the server thread, read by the network threads through {@link #isInputFrozen()}
+     */
+    @Nullable
+    private static volatile Benchmark active;
+
+    private final MinecraftServer server;
+    @Nullable
+    private final ServerCommandSource source;
+    private final int ticks;
+    private final boolean freeze;
+    private final boolean stopAfterwards;
+    private final boolean turbo = Settings.tickWarpTurbo;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long[] gcCounts = new long[collectors.size()];
+    private final long[] gcTimes = new long[collectors.size()];
+    private long startTime;
+
+    private Benchmark(MinecraftServer server, @Nullable ServerCommandSource source, int ticks, boolean freeze, boolean stopAfterwards) {
+        this.server = server;
+        this.source = source;
+        this.ticks = ticks;
+        this.freeze = freeze;
+        this.stopAfterwards = stopAfterwards;
+    }
+
+    /**
+     * @return Whether a benchmark with frozen player input is running
+     */
+    public static boolean isInputFrozen() {
+        Benchmark benchmark = active;
+        return benchmark != null && benchmark.freeze && isActive();
+    }
+
+    /**
+     * @return Whether a benchmark is running
+     */
+    public static boolean isActive() {
+        return active != null && CarpetProfiler.isActive(CarpetProfiler.ReportType.BENCHMARK);
+    }
+
+    /**
+     * @param source Receiver of the result message, or {@code null} to broadcast
+     * @param freeze Whether packets of players are ignored during the benchmark
+     * @param stopAfterwards Whether to stop the server once the report is written
+     * @return Whether the benchmark could be started
+     */
+    public static boolean start(MinecraftServer server, @Nullable ServerCommandSource source, int ticks, boolean freeze, boolean stopAfterwards) {
+        TickSpeed tickSpeed = TickSpeed.getServerTickSpeed();
+        if (tickSpeed.getWarpTimeRemaining() > 0 || CarpetProfiler.isActive()) return false;
+        Benchmark benchmark = new Benchmark(server, source, ticks, freeze, stopAfterwards);
+        for (int i = 0; i < benchmark.collectors.size(); i++) {
+            GarbageCollectorMXBean collector = benchmark.collectors.get(i);
+            benchmark.gcCounts[i] = collector.getCollectionCount();
+            benchmark.gcTimes[i] = collector.getCollectionTime();
+        }
+        benchmark.startTime = System.nanoTime();
+        if (!CarpetProfiler.startBenchmarkReport(server, ticks, benchmark::finish)) return false;
+        active = benchmark;
+        tickSpeed.setTickWarp(source, ticks, null);
+        return true;
+    }
+
+    /**
+     * Starts a benchmark if requested with the {@value #TICKS_PROPERTY} system property
+     */
+    public static void startFromProperties(MinecraftServer server) {
+        String ticks = System.getProperty(TICKS_PROPERTY);
+        if (ticks == null) return;
+        int amount;
+        try {
+            amount = Integer.parseInt(ticks);
+        } catch (NumberFormatException e) {
+            LOGGER.error("Invalid benchmark length {}", ticks);
+            return;
+        }
+        if (amount <= 0) return;
+        LOGGER.info("Running benchmark for {} ticks", amount);
+        start(server, null, amount, Boolean.getBoolean(FREEZE_PROPERTY), true);
+    }
+
+    private void finish(JsonObject report) {
+        active = null;
+        report.addProperty("wallTimeMs", (System.nanoTime() - startTime) / 1e6);
+        report.addProperty("turbo", turbo);
+        report.addProperty("inputFrozen", freeze);
+        JsonObject gc = new JsonObject();
+        for (int i = 0; i < collectors.size(); i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            JsonObject stats = new JsonObject();
+            stats.addProperty("count", collector.getCollectionCount() - gcCounts[i]);
+            stats.addProperty("timeMs", collector.getCollectionTime() - gcTimes[i]);
+            gc.add(collector.getName(), stats);
+        }
+        report.add("gc", gc);
+        JsonObject meta = new JsonObject();
+        meta.addProperty("version", Build.VERSION);
+        meta.addProperty("commit", Build.COMMIT);
+        meta.addProperty("minecraft", Build.MINECRAFT_VERSION);
+        meta.addProperty("java", System.getProperty("java.version"));
+        meta.addProperty("vm", System.getProperty("java.vm.name"));
+        meta.addProperty("processors", Runtime.getRuntime().availableProcessors());
+        meta.addProperty("maxMemory", Runtime.getRuntime().maxMemory());
+        meta.addProperty("level", ((ServerWorldProperties) server.getOverworld().getLevelProperties()).getLevelName());
+        JsonObject rules = new JsonObject();
+        for (ParsedRule<?> rule : Settings.MANAGER.getNonDefault()) rules.addProperty(rule.getName(), rule.getAsString());
+        meta.add("rules", rules);
+        report.add("meta", meta);
+
+        String name = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss", Locale.ROOT).format(new Date()) + ".json";
+        Path file = server.getSavePath(BENCHMARKS).resolve(name);
+        CompletableFuture.runAsync(() -> {
+            try {
+                Files.createDirectories(file.getParent());
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    GSON.toJson(report, writer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.getMainWorkerExecutor()).whenComplete((result, e) -> server.execute(() -> {
+            if (e != null) {
+                LOGGER.error("Could not write benchmark to {}", file, e);
+                message(ts("command.tick.benchmark.failed", Formatting.RED, name));
+            } else {
+                JsonObject mspt = report.getAsJsonObject("mspt");
+                LOGGER.info("Benchmark written to {}", file);
+                message(t("command.tick.benchmark.written", ticks,
+                    String.format(Locale.ROOT, "%.2f", mspt.get("mean").getAsDouble()),
+                    String.format(Locale.ROOT, "%.2f", mspt.get("p99").getAsDouble()),
+                    s(BENCHMARKS.getRelativePath() + "/" + name, Formatting.UNDERLINE)));
+            }
+            if (stopAfterwards) server.stop(false);
+        }));
+    }
+
+    private void message(MutableText text) {
+        if (source != null) m(source, text);
+        else broadcast(server, text);
+    }
+}
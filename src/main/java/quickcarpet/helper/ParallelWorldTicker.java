@@ -0,0 +1,199 @@
+package quickcarpet.helper;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.crash.CrashException;
+import net.minecraft.util.crash.CrashReport;
+import net.minecraft.util.profiler.DummyProfiler;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import quickcarpet.settings.Settings;
+import quickcarpet.utils.CarpetProfiler;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ticks every dimension except the overworld on its own thread during the world phase of
+ * {@link MinecraftServer#tickWorlds}, the overworld stays on the server thread.
+ * All worlds have finished before the network is ticked.
+ * <p>
+ * Operations that cross dimensions are {@link #defer deferred} until all worlds have finished,
+ * including those started by the overworld on the server thread.
+ */
+public final class ParallelWorldTicker {
+    private static final Map<RegistryKey<World>, ExecutorService> EXECUTORS = new HashMap<>();
+    private static final Queue<Runnable> DEFERRED = new ConcurrentLinkedQueue<>();
+    private static final List<Task> tasks = new ArrayList<>();
+    private static volatile boolean active;
+    private static int remaining;
+    private static long startTime;
+    private static long serialTime;
+
+    private ParallelWorldTicker() {}
+
+    public static class WorkerThread extends Thread {
+        private volatile ServerWorld world;
+
+        private WorkerThread(Runnable runnable, RegistryKey<World> dimension) {
+            super(runnable, "Dimension Worker " + dimension.getValue());
+            setDaemon(true);
+        }
+
+        /**
+         * @return The world currently ticked by this thread
+         */
+        @Nullable
+        public ServerWorld getWorld() {
+            return world;
+        }
+    }
+
+    private static class Task {
+        final ServerWorld world;
+        final Future<?> future;
+        long time;
+
+        Task(ServerWorld world, BooleanSupplier shouldKeepTicking) {
+            this.world = world;
+            this.future = getExecutor(world.getRegistryKey()).submit(() -> {
+                WorkerThread thread = (WorkerThread) Thread.currentThread();
+                thread.world = world;
+                long start = System.nanoTime();
+                try {
+                    world.tick(shouldKeepTicking);
+                } finally {
+                    time = System.nanoTime() - start;
+                    thread.world = null;
+                }
+            });
+        }
+    }
+
+    private static ExecutorService getExecutor(RegistryKey<World> dimension) {
+        return EXECUTORS.computeIfAbsent(dimension, d -> Executors.newSingleThreadExecutor(r -> new WorkerThread(r, d)));
+    }
+
+    /**
+     * @return Whether worlds are being ticked in parallel right now, on any thread
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return Whether the current thread is a worker that is ticking {@code world}
+     */
+    public static boolean isTicking(World world) {
+        Thread thread = Thread.currentThread();
+        return thread instanceof WorkerThread && ((WorkerThread) thread).world == world;
+    }
+
+    /**
+     * Runs {@code task} on the server thread once all worlds have finished ticking,
+     * or immediately if worlds are not being ticked in parallel
+     */
+    public static void defer(Runnable task) {
+        if (active) {
+            DEFERRED.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Starts ticking all worlds but the overworld, called before the world loop
+     */
+    public static void start(MinecraftServer server, BooleanSupplier shouldKeepTicking) {
+        // a crash in the overworld skips finish(), don't carry its state into this tick
+        tasks.clear();
+        remaining = 0;
+        DEFERRED.clear();
+        // the vanilla profiler keeps a single path stack for all worlds
+        active = Settings.parallelDimensionTicking && CarpetProfiler.supportsParallelWorlds() && server.getProfiler() instanceof DummyProfiler;
+        if (!active) return;
+        Iterable<ServerWorld> worlds = server.getWorlds();
+        CarpetProfiler.startParallelWorlds(worlds);
+        startTime = System.nanoTime();
+        serialTime = 0;
+        for (ServerWorld world : worlds) {
+            remaining++;
+            if (world.getRegistryKey() != World.OVERWORLD) tasks.add(new Task(world, shouldKeepTicking));
+        }
+    }
+
+    /**
+     * Called for every world in the world loop in place of {@link ServerWorld#tick(BooleanSupplier)},
+     * waits for all workers after the last world
+     */
+    public static void tick(ServerWorld world, BooleanSupplier shouldKeepTicking) {
+        if (!active) {
+            world.tick(shouldKeepTicking);
+            return;
+        }
+        if (world.getRegistryKey() == World.OVERWORLD) {
+            long start = System.nanoTime();
+            try {
+                world.tick(shouldKeepTicking);
+            } catch (Throwable t) {
+                abort();
+                throw t;
+            }
+            serialTime += System.nanoTime() - start;
+        }
+        if (--remaining == 0) finish();
+    }
+
+    /**
+     * Waits for the workers after the overworld crashed, the crash report of the overworld takes precedence
+     */
+    private static void abort() {
+        for (Task task : tasks) {
+            try {
+                task.future.get();
+            } catch (ExecutionException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        tasks.clear();
+        DEFERRED.clear();
+        active = false;
+    }
+
+    private static void finish() {
+        Throwable error = null;
+        ServerWorld errorWorld = null;
+        for (Task task : tasks) {
+            try {
+                task.future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                    errorWorld = task.world;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            serialTime += task.time;
+        }
+        tasks.clear();
+        // only once all workers are done, they still defer until then
+        active = false;
+        CarpetProfiler.endParallelWorlds(serialTime, System.nanoTime() - startTime);
+        if (error != null) {
+            DEFERRED.clear();
+            CrashReport crashReport = CrashReport.create(error, "Exception ticking world");
+            errorWorld.addDetailsToCrashReport(crashReport);
+            throw new CrashException(crashReport);
+        }
+        Runnable task;
+        while ((task = DEFERRED.poll()) != null) task.run();
+    }
+}
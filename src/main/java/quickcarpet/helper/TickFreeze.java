@@ -0,0 +1,154 @@
+package quickcarpet.helper;
+
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Dimensions and areas that are frozen independently of the global {@link TickSpeed#isPaused()} state.
+ * Frozen areas skip entities, block entities and scheduled ticks, frozen dimensions skip everything but players and chunk loading.
+ */
+public class TickFreeze {
+    private final Map<RegistryKey<World>, Area> dimensions = new HashMap<>();
+    private final Map<RegistryKey<World>, List<Area>> areas = new HashMap<>();
+    private final Map<Integer, Area> byId = new LinkedHashMap<>();
+    private int lastId;
+
+    /**
+     * Areas of the last queried world, replaced as a whole since dimensions may tick on separate threads
+     */
+    private WorldAreas last;
+
+    private static class WorldAreas {
+        final World world;
+        final List<Area> areas;
+
+        WorldAreas(World world, List<Area> areas) {
+            this.world = world;
+            this.areas = areas;
+        }
+    }
+
+    public static class Area {
+        public final int id;
+        public final RegistryKey<World> dimension;
+        /**
+         * Frozen blocks, {@code null} for the whole dimension
+         */
+        @Nullable
+        public final BlockBox box;
+        private int stepAmount;
+
+        private Area(int id, RegistryKey<World> dimension, @Nullable BlockBox box) {
+            this.id = id;
+            this.dimension = dimension;
+            this.box = box;
+        }
+
+        public boolean isStepping() {
+            return stepAmount > 0;
+        }
+
+        private boolean isFrozen(BlockPos pos) {
+            return stepAmount == 0 && (box == null || box.contains(pos));
+        }
+    }
+
+    /**
+     * @return The new freeze of the dimension, or {@code null} if it was frozen and is now unfrozen
+     */
+    @Nullable
+    public Area toggleDimension(RegistryKey<World> dimension) {
+        Area area = dimensions.remove(dimension);
+        if (area != null) {
+            remove(area.id);
+            return null;
+        }
+        area = new Area(++lastId, dimension, null);
+        dimensions.put(dimension, area);
+        byId.put(area.id, area);
+        return area;
+    }
+
+    public Area freezeArea(RegistryKey<World> dimension, BlockBox box) {
+        Area area = new Area(++lastId, dimension, box);
+        areas.computeIfAbsent(dimension, d -> new ArrayList<>()).add(area);
+        byId.put(area.id, area);
+        last = null;
+        return area;
+    }
+
+    @Nullable
+    public Area remove(int id) {
+        Area area = byId.remove(id);
+        if (area == null) return null;
+        if (area.box == null) {
+            dimensions.remove(area.dimension);
+        } else {
+            List<Area> list = areas.get(area.dimension);
+            list.remove(area);
+            if (list.isEmpty()) areas.remove(area.dimension);
+            last = null;
+        }
+        return area;
+    }
+
+    public void clear() {
+        dimensions.clear();
+        areas.clear();
+        byId.clear();
+        last = null;
+    }
+
+    public Collection<Area> getAll() {
+        return byId.values();
+    }
+
+    @Nullable
+    public Area get(int id) {
+        return byId.get(id);
+    }
+
+    @Nullable
+    public Area getDimension(RegistryKey<World> dimension) {
+        return dimensions.get(dimension);
+    }
+
+    /**
+     * Lets a frozen dimension or area run for the given amount of ticks, with the same semantics as {@link TickSpeed#setStep(int)}
+     */
+    public void step(Area area, int ticks) {
+        if (ticks <= 0) throw new IllegalArgumentException("Step amount must be positive");
+        area.stepAmount = ticks + 1;
+    }
+
+    public void tick() {
+        for (Area area : byId.values()) {
+            if (area.stepAmount > 0) area.stepAmount--;
+        }
+    }
+
+    public boolean isFrozen(World world) {
+        if (dimensions.isEmpty()) return false;
+        Area area = dimensions.get(world.getRegistryKey());
+        return area != null && area.stepAmount == 0;
+    }
+
+    public boolean isFrozen(World world, BlockPos pos) {
+        if (areas.isEmpty()) return false;
+        WorldAreas cached = last;
+        if (cached == null || cached.world != world) {
+            cached = new WorldAreas(world, areas.getOrDefault(world.getRegistryKey(), Collections.emptyList()));
+            last = cached;
+        }
+        List<Area> list = cached.areas;
+        for (int i = 0, size = list.size(); i < size; i++) {
+            if (list.get(i).isFrozen(pos)) return true;
+        }
+        return false;
+    }
+}
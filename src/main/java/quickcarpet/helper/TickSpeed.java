@@ -13,10 +13,13 @@ import quickcarpet.QuickCarpetServer;
 import quickcarpet.api.TelemetryProvider;
 import quickcarpet.commands.TickCommand;
 import quickcarpet.pubsub.PubSubInfoProvider;
+import quickcarpet.settings.Settings;
 import quickcarpet.utils.Messenger;
+import quickcarpet.utils.profiler.LatencyHistogram;
+import quickcarpet.utils.profiler.LoadAverage;
+import quickcarpet.utils.profiler.TickLengthRecorder;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,14 +37,45 @@ public class TickSpeed implements TelemetryProvider {
     private boolean paused = false;
     private String tickWarpCallback = null;
     private ServerCommandSource tickWarpSender = null;
+    private boolean tickWarpTurbo = false;
+    private double tickWarpBaselineMSPT = 0;
+    private final TickLengthRecorder tickLengths = new TickLengthRecorder();
+    private double pacingError = 0;
+    public final TickFreeze frozenAreas = new TickFreeze();
+
+    private static final int GOVERNOR_INTERVAL = 20;
+    /**
+     * The governor leaves the rate alone while the 95th percentile of tick lengths stays between these fractions of the tick interval
+     */
+    private static final double GOVERNOR_LOW = 0.6;
+    private static final double GOVERNOR_HIGH = 0.9;
+    /**
+     * Fraction of the tick interval the governor aims for when it adjusts the rate
+     */
+    private static final double GOVERNOR_TARGET = 0.75;
+    /**
+     * Largest factor by which a single adjustment changes the rate
+     */
+    private static final double GOVERNOR_MAX_STEP = 1.25;
+    private boolean governor = false;
+    private float governorMin;
+    private float governorMax;
+    private int governorTicks;
+
+    private static final LoadAverage LOAD_AVERAGE = new LoadAverage();
 
     private static final PubSubInfoProvider<Float> TICK_RATE_GOAL_PUBSUB_PROVIDER = new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "carpet.tick-rate.tps-goal", 0, () -> getServerTickSpeed().tickRateGoal);
     private static final PubSubInfoProvider<Integer> TICK_STEP_PUBSUB_PROVIDER = new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "carpet.tick-rate.step", 0, () -> getServerTickSpeed().stepAmount);
     private static final PubSubInfoProvider<Boolean> PAUSED_PUBSUB_PROVIDER = new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "carpet.tick-rate.paused", 0, () -> getServerTickSpeed().paused);
 
     static {
-        new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.mspt", 20, () -> getServerTickSpeed().getCurrentMSPT());
-        new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.tps", 20, () -> getServerTickSpeed().getTPS());
+        new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.mspt", 20, () -> getServerTickSpeed().getCurrentMSPT()).enableHistory();
+        new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.tps", 20, () -> getServerTickSpeed().getTPS()).enableHistory();
+        new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.pacing-error", 20, () -> getServerTickSpeed().getPacingError());
+        for (int i = 0; i < LoadAverage.HORIZONS.length; i++) {
+            int horizon = i;
+            new PubSubInfoProvider<>(QuickCarpet.PUBSUB, "minecraft.performance.load.mspt." + LoadAverage.HORIZONS[i] + "m", 20, () -> LOAD_AVERAGE.get(horizon));
+        }
     }
 
     public TickSpeed(@Nullable MinecraftServer server) {
@@ -63,6 +97,49 @@ public class TickSpeed implements TelemetryProvider {
         if (!isClient) TICK_RATE_GOAL_PUBSUB_PROVIDER.publish();
     }
 
+    /**
+     * Lets the tick rate follow the load between {@code min} and {@code max} until {@link #disableGovernor()}
+     * @throws IllegalArgumentException If {@code min} is greater than {@code max}
+     */
+    public void setGovernor(float min, float max) {
+        if (min > max) throw new IllegalArgumentException("Minimum tick rate " + min + " is greater than the maximum " + max);
+        governor = true;
+        governorMin = min;
+        governorMax = max;
+        governorTicks = 0;
+        setTickRateGoal(MathHelper.clamp(tickRateGoal, governorMin, governorMax));
+    }
+
+    public void disableGovernor() {
+        governor = false;
+    }
+
+    public boolean isGoverned() {
+        return governor;
+    }
+
+    public float getGovernorMin() {
+        return governorMin;
+    }
+
+    public float getGovernorMax() {
+        return governorMax;
+    }
+
+    private void updateGovernor() {
+        if (!governor || paused || warpTimeRemaining > 0 || ++governorTicks < GOVERNOR_INTERVAL) return;
+        governorTicks = 0;
+        MSPTStatistics stats = getMSPTStats(GOVERNOR_INTERVAL);
+        if (stats.count == 0) return;
+        double load = stats.percentile95 / msptGoal;
+        if (load >= GOVERNOR_LOW && load <= GOVERNOR_HIGH) return;
+        double rate = 1000 * GOVERNOR_TARGET / Math.max(stats.percentile95, 1e-3);
+        rate = MathHelper.clamp(rate, tickRateGoal / GOVERNOR_MAX_STEP, tickRateGoal * GOVERNOR_MAX_STEP);
+        rate = MathHelper.clamp(rate, governorMin, governorMax);
+        if (Math.abs(rate - tickRateGoal) < 0.05) return;
+        setTickRateGoal((float) rate);
+    }
+
     public void setStep(int ticks) {
         if (ticks <= 0) throw new IllegalArgumentException("Step amount must be positive");
         paused = false;
@@ -91,6 +168,11 @@ public class TickSpeed implements TelemetryProvider {
         warpTimeRemaining = warpAmount;
         tickWarpCallback = callback;
         tickWarpSender = source;
+        tickWarpTurbo = Settings.tickWarpTurbo;
+        // the turbo speedup is only reported against a full window of regular ticks,
+        // benchmarks started together with the server have none yet
+        MSPTStatistics baseline = getMSPTStats(100);
+        tickWarpBaselineMSPT = baseline.count >= 100 ? baseline.mean : 0;
         return ts("command.tick.warp.start", GRAY_ITALIC);
     }
 
@@ -102,6 +184,13 @@ public class TickSpeed implements TelemetryProvider {
         return warpTimeRemaining;
     }
 
+    /**
+     * @return Whether per-tick work for clients is currently skipped because of {@link Settings#tickWarpTurbo}
+     */
+    public boolean isTurboWarping() {
+        return tickWarpTurbo && tickWarpStartTime != 0;
+    }
+
     @Nullable
     public ServerCommandSource getTickWarpSender() {
         return tickWarpSender;
@@ -124,6 +213,9 @@ public class TickSpeed implements TelemetryProvider {
         tickWarpScheduledTicks = 0;
         tickWarpStartTime = 0;
         MinecraftServer server = QuickCarpetServer.getMinecraftServer();
+        boolean turbo = tickWarpTurbo;
+        tickWarpTurbo = false;
+        if (turbo) QuickCarpetServer.getInstance().flushTurboWarp();
         if (tickWarpCallback != null) {
             CommandManager cmdManager = server.getCommandManager();
             try {
@@ -142,6 +234,9 @@ public class TickSpeed implements TelemetryProvider {
             tickWarpCallback = null;
         }
         MutableText message = ts("command.tick.warp.completed", GRAY_ITALIC, tps, String.format("%.2f", mspt));
+        if (turbo && completedTicks > 0 && tickWarpBaselineMSPT > 0) {
+            message.append(ts("command.tick.warp.turbo", GRAY_ITALIC, String.format("%.2f", tickWarpBaselineMSPT / mspt), String.format("%.2f", tickWarpBaselineMSPT)));
+        }
         if (tickWarpSender != null) {
             m(tickWarpSender, message);
             tickWarpSender = null;
@@ -177,11 +272,14 @@ public class TickSpeed implements TelemetryProvider {
     public void tick() {
         if (server != null) {
             int ticks = server.getTicks();
-            if (ticks > 100 && ticks % 100 == 0) { // ignore spike at server start
-                updateLoadAvg();
+            if (ticks > 1) tickLengths.record(server.lastTickLengths[(ticks - 1) % 100]);
+            if (ticks > 100) { // ignore spike at server start
+                updateLoadAvg(server.lastTickLengths[(ticks - 1) % 100]);
             }
             Measurement.tickAll();
+            updateGovernor();
         }
+        frozenAreas.tick();
         if (stepAmount > 0) {
             stepAmount--;
             if (stepAmount == 0) {
@@ -191,34 +289,41 @@ public class TickSpeed implements TelemetryProvider {
         }
     }
 
+    /**
+     * @param nanos How much later than scheduled the current tick started
+     */
+    public void recordPacingError(long nanos) {
+        pacingError = pacingError * 0.95 + Math.abs(nanos) * 1e-6 * 0.05;
+    }
+
+    /**
+     * @return Average deviation of tick start times from their schedule in ms, over roughly the last 20 ticks
+     */
+    public double getPacingError() {
+        return pacingError;
+    }
+
     public double getCurrentMSPT() {
         return server == null ? 0 : MathHelper.average(server.lastTickLengths) * 1.0E-6D;
     }
 
     public static boolean resetLoadAvg = true;
-    private static double loadAvg1min;
-    private static final double exp1min = 1 / Math.exp(5. / (1 * 60.));
-    private static double loadAvg5min;
-    private static final double exp5min = 1 / Math.exp(5. / (5 * 60.));
-    private static double loadAvg15min;
-    private static final double exp15min = 1 / Math.exp(5. / (15 * 60.));
-
-    private void updateLoadAvg() {
-        double currentLoad = getCurrentMSPT();
+
+    private void updateLoadAvg(long tickLength) {
         if (resetLoadAvg) {
-            loadAvg1min = currentLoad;
-            loadAvg5min = currentLoad;
-            loadAvg15min = currentLoad;
+            LOAD_AVERAGE.reset();
             resetLoadAvg = false;
-            return;
         }
-        loadAvg1min = loadAvg1min * exp1min + currentLoad * (1 - exp1min);
-        loadAvg5min = loadAvg1min * exp5min + currentLoad * (1 - exp5min);
-        loadAvg15min = loadAvg1min * exp15min + currentLoad * (1 - exp15min);
+        LOAD_AVERAGE.sample(tickLength * 1e-6, System.nanoTime());
     }
 
-    public static MSPTStatistics getMSPTStats(MinecraftServer server) {
-        return new MSPTStatistics(server.lastTickLengths);
+    /**
+     * @param ticks Length of the window, rounded up to whole minutes or hours above {@link TickLengthRecorder#RAW_TICKS}
+     */
+    public MSPTStatistics getMSPTStats(int ticks) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        tickLengths.addTo(histogram, ticks);
+        return new MSPTStatistics(histogram);
     }
 
     public static class MSPTStatistics {
@@ -229,40 +334,24 @@ public class TickSpeed implements TelemetryProvider {
         public final double variance;
         public final double stdDev;
         public final double lagPercentage;
+        public final double percentile50;
         public final double percentile90;
         public final double percentile95;
         public final double percentile99;
 
-        private MSPTStatistics(long[] lastTickLengths) {
-            this.count = lastTickLengths.length;
-            long min = Long.MAX_VALUE;
-            long max = 0;
-            long total = 0;
-            int lagTicks = 0;
-            for (long tick : lastTickLengths) {
-                if (tick < min) min = tick;
-                else if (tick > max) max = tick;
-                total += tick;
-                if (tick > 50000000) lagTicks++;
-            }
-            double mean = (double) total / lastTickLengths.length;
-            double variance = 0;
-            for (long lastTickLength : lastTickLengths) {
-                double r = lastTickLength - mean;
-                variance += r * r;
-            }
-            variance /= lastTickLengths.length;
-            this.min = min / 1e6;
-            this.max = max / 1e6;
-            this.mean = mean / 1e6;
-            this.variance = variance / 1e6;
-            this.stdDev = Math.sqrt(variance) / 1e6;
-            this.lagPercentage = 100. * lagTicks / lastTickLengths.length;
-            long[] sorted = Arrays.copyOf(lastTickLengths, lastTickLengths.length);
-            Arrays.sort(sorted);
-            this.percentile90 = sorted[(90 * sorted.length) / 100 - 1] / 1e6;
-            this.percentile95 = sorted[(95 * sorted.length) / 100 - 1] / 1e6;
-            this.percentile99 = sorted[(99 * sorted.length) / 100 - 1] / 1e6;
+        private MSPTStatistics(LatencyHistogram tickLengths) {
+            this.count = (int) tickLengths.getTotalCount();
+            this.min = tickLengths.getMin() / 1e6;
+            this.max = tickLengths.getMax() / 1e6;
+            this.mean = tickLengths.getMean() / 1e6;
+            double stdDev = tickLengths.getStdDev();
+            this.variance = stdDev * stdDev / 1e6;
+            this.stdDev = stdDev / 1e6;
+            this.lagPercentage = count == 0 ? 0 : 100. * tickLengths.getCountAbove(50000000) / count;
+            this.percentile50 = tickLengths.getValueAtPercentile(50) / 1e6;
+            this.percentile90 = tickLengths.getValueAtPercentile(90) / 1e6;
+            this.percentile95 = tickLengths.getValueAtPercentile(95) / 1e6;
+            this.percentile99 = tickLengths.getValueAtPercentile(99) / 1e6;
         }
 
         @Override
@@ -277,14 +366,13 @@ public class TickSpeed implements TelemetryProvider {
         public final ServerCommandSource source;
         private final MinecraftServer server;
         public final int length;
-        public final long[] tickLengths;
+        public final LatencyHistogram tickLengths = new LatencyHistogram();
         private int ticksRecorded;
 
         private Measurement(ServerCommandSource source, int length) {
             this.source = source;
             this.server = source.getMinecraftServer();
             this.length = length;
-            this.tickLengths = new long[length];
             measurements.put(source, this);
         }
 
@@ -295,7 +383,8 @@ public class TickSpeed implements TelemetryProvider {
                 return;
             }
             int previous = (server.getTicks() - 1) % 100;
-            tickLengths[ticksRecorded++] = server.lastTickLengths[previous];
+            tickLengths.record(server.lastTickLengths[previous]);
+            ticksRecorded++;
         }
 
         private static void tickAll() {
@@ -309,15 +398,19 @@ public class TickSpeed implements TelemetryProvider {
     }
 
     public static double getExponential1MinuteMSPT() {
-        return loadAvg1min;
+        return LOAD_AVERAGE.get(0);
     }
 
     public static double getExponential5MinuteMSPT() {
-        return loadAvg5min;
+        return LOAD_AVERAGE.get(1);
     }
 
     public static double getExponential15MinuteMSPT() {
-        return loadAvg15min;
+        return LOAD_AVERAGE.get(2);
+    }
+
+    public static double getExponential60MinuteMSPT() {
+        return LOAD_AVERAGE.get(3);
     }
 
     public double calculateTPS(double mspt) {
@@ -335,13 +428,28 @@ public class TickSpeed implements TelemetryProvider {
         obj.addProperty("tps", calculateTPS(mspt));
         obj.addProperty("mspt", mspt);
         obj.addProperty("msptGoal", msptGoal);
+        obj.addProperty("pacingError", pacingError);
         obj.addProperty("paused", paused);
+        obj.addProperty("governor", governor);
         obj.addProperty("warpTimeRemaining", warpTimeRemaining);
         JsonObject loadAvg = new JsonObject();
-        loadAvg.addProperty("1", loadAvg1min);
-        loadAvg.addProperty("5", loadAvg5min);
-        loadAvg.addProperty("15", loadAvg15min);
+        for (int i = 0; i < LoadAverage.HORIZONS.length; i++) {
+            loadAvg.addProperty(Integer.toString(LoadAverage.HORIZONS[i]), LOAD_AVERAGE.get(i));
+        }
         obj.add("loadAvg", loadAvg);
+        JsonObject percentiles = new JsonObject();
+        for (int minutes : new int[] {1, 5, 15, 60}) {
+            MSPTStatistics stats = getMSPTStats(minutes * 1200);
+            JsonObject window = new JsonObject();
+            window.addProperty("ticks", stats.count);
+            window.addProperty("mean", stats.mean);
+            window.addProperty("p50", stats.percentile50);
+            window.addProperty("p90", stats.percentile90);
+            window.addProperty("p99", stats.percentile99);
+            window.addProperty("max", stats.max);
+            percentiles.add(Integer.toString(minutes), window);
+        }
+        obj.add("msptWindows", percentiles);
         return obj;
     }
 }
@@ -3,6 +3,7 @@ package quickcarpet.logging;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
+import quickcarpet.utils.CarpetProfiler;
 import quickcarpet.utils.Messenger;
 
 import java.util.Map;
@@ -17,7 +18,15 @@ public class CommandLogHandler implements LogHandler {
 
     @Override
     public void handle(Logger logger, ServerPlayerEntity player, MutableText[] message, Supplier<Map<String, Object>> commandParams) {
-        Map<String, Object> params = commandParams.get();
+        CarpetProfiler.startCommand(CarpetProfiler.CommandType.LOG_HANDLER, logger.getName());
+        try {
+            execute(player, message, commandParams.get());
+        } finally {
+            CarpetProfiler.endCommand();
+        }
+    }
+
+    private void execute(ServerPlayerEntity player, MutableText[] message, Map<String, Object> params) {
         String command = this.command;
         for (Map.Entry<String, ?> param : params.entrySet()) {
             String variable = "$" + param.getKey();
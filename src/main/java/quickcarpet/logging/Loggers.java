@@ -16,10 +16,11 @@ public final class Loggers {
 
     public static final Logger TNT = registerLogger("tnt", "brief", new String[]{"brief", "full"}, LogHandler.CHAT);
     public static final Logger TPS = registerLogger("tps", null, null, LogHandler.HUD);
-    public static final Logger PACKETS = registerLogger("packets", null, null, LogHandler.HUD);
+    public static final Logger PACKETS = registerLogger("packets", "total", new String[]{"total", "types", "players"}, LogHandler.HUD);
     public static final Logger COUNTER = registerLogger("counter", "white", Arrays.stream(DyeColor.values()).map(Object::toString).toArray(String[]::new), LogHandler.HUD);
     public static final Logger MOBCAPS = registerLogger("mobcaps", "dynamic", new String[]{"dynamic", "overworld", "nether", "end"}, LogHandler.HUD);
     public static final Logger GC = registerLogger("gc", null, null, LogHandler.CHAT);
+    public static final Logger LAG_SPIKES = registerLogger("lagSpikes", null, null, LogHandler.CHAT);
 
 //    public static final Logger PROJECTILES<Logger.EmptyCommandParameters> = registerLogger("projectiles", "full",  new String[]{"brief", "full"}, LogHandler.CHAT);
 //    public static final Logger FALLING_BLOCKS<Logger.EmptyCommandParameters> = registerLogger("fallingBlocks", "brief", new String[]{"brief", "full"}, LogHandler.CHAT);
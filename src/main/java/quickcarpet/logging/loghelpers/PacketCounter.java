@@ -1,16 +1,49 @@
 package quickcarpet.logging.loghelpers;
 
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.Packet;
+import net.minecraft.network.listener.PacketListener;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts packets per type and player. Packets are counted on the netty event loops,
+ * so all counters are striped ({@link LongAdder}) and only ever read as a difference
+ * between two {@link Window}s on the server thread.
+ */
 public class PacketCounter {
-    private static long totalOut = 0;
-    private static long totalIn = 0;
+    private static final LongAdder totalOut = new LongAdder();
+    private static final LongAdder totalIn = new LongAdder();
     private static long previousOut = 0;
     private static long previousIn = 0;
+    private static long lastOut = 0;
+    private static long lastIn = 0;
+
+    private static final ConcurrentMap<Class<?>, Stats> OUT_BY_TYPE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Stats> IN_BY_TYPE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Stats> OUT_BY_PLAYER = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Stats> IN_BY_PLAYER = new ConcurrentHashMap<>();
+
+    private static Window lastSecond = new Window();
+    private static Window previousSecond = new Window();
 
     public static void reset() {
-        previousIn = totalIn;
-        previousOut = totalOut;
-        totalIn = 0;
-        totalOut = 0;
+        long out = totalOut.sum();
+        long in = totalIn.sum();
+        previousIn = in - lastIn;
+        previousOut = out - lastOut;
+        lastIn = in;
+        lastOut = out;
+        Window now = new Window();
+        previousSecond = now.since(lastSecond);
+        lastSecond = now;
     }
 
     public static long getPreviousIn() {
@@ -21,11 +54,174 @@ public class PacketCounter {
         return previousOut;
     }
 
+    /**
+     * @return Counters of the last completed {@link #reset()} interval
+     */
+    public static Window getPreviousSecond() {
+        return previousSecond;
+    }
+
     public static void in() {
-        totalIn++;
+        totalIn.increment();
     }
 
     public static void out() {
-        totalOut++;
+        totalOut.increment();
+    }
+
+    public static void in(Packet<?> packet, @Nullable String player) {
+        in();
+        getStats(IN_BY_TYPE, packet.getClass()).add(0, 0);
+        if (player != null) getStats(IN_BY_PLAYER, player).add(0, 0);
+    }
+
+    public static void encoded(Packet<?> packet, @Nullable String player, int bytes, long nanos) {
+        getStats(OUT_BY_TYPE, packet.getClass()).add(bytes, nanos);
+        if (player != null) getStats(OUT_BY_PLAYER, player).add(bytes, nanos);
+    }
+
+    /**
+     * {@link ConcurrentHashMap#computeIfAbsent} locks the bin even for present keys on Java 8,
+     * so only fall back to it for new keys
+     */
+    private static <K> Stats getStats(ConcurrentMap<K, Stats> map, K key) {
+        Stats stats = map.get(key);
+        if (stats != null) return stats;
+        return map.computeIfAbsent(key, k -> new Stats());
+    }
+
+    public static void removePlayer(String player) {
+        IN_BY_PLAYER.remove(player);
+        OUT_BY_PLAYER.remove(player);
+    }
+
+    @Nullable
+    public static String getPlayerName(@Nullable PacketListener listener) {
+        if (!(listener instanceof ServerPlayNetworkHandler)) return null;
+        return ((ServerPlayNetworkHandler) listener).player.getEntityName();
+    }
+
+    @Nullable
+    public static String getPlayerName(ChannelHandlerContext ctx) {
+        ChannelHandler handler = ctx.pipeline().get("packet_handler");
+        if (!(handler instanceof ClientConnection)) return null;
+        return getPlayerName(((ClientConnection) handler).getPacketListener());
+    }
+
+    public static String getName(Class<?> packetClass) {
+        return packetClass.getSimpleName();
+    }
+
+    private static class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        void add(int bytes, long nanos) {
+            count.increment();
+            if (bytes != 0) this.bytes.add(bytes);
+            if (nanos != 0) this.nanos.add(nanos);
+        }
+
+        long[] sum() {
+            return new long[]{count.sum(), bytes.sum(), nanos.sum()};
+        }
+    }
+
+    public static class Entry<K> {
+        public final K key;
+        public final long count;
+        public final long bytes;
+        public final long nanos;
+
+        private Entry(K key, long count, long bytes, long nanos) {
+            this.key = key;
+            this.count = count;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Snapshot of all counters, or the difference between two snapshots
+     */
+    public static class Window {
+        private final Map<Class<?>, long[]> outByType;
+        private final Map<Class<?>, long[]> inByType;
+        private final Map<String, long[]> outByPlayer;
+        private final Map<String, long[]> inByPlayer;
+
+        public Window() {
+            this.outByType = snapshot(OUT_BY_TYPE);
+            this.inByType = snapshot(IN_BY_TYPE);
+            this.outByPlayer = snapshot(OUT_BY_PLAYER);
+            this.inByPlayer = snapshot(IN_BY_PLAYER);
+        }
+
+        private Window(Window now, Window start) {
+            this.outByType = diff(now.outByType, start.outByType);
+            this.inByType = diff(now.inByType, start.inByType);
+            this.outByPlayer = diff(now.outByPlayer, start.outByPlayer);
+            this.inByPlayer = diff(now.inByPlayer, start.inByPlayer);
+        }
+
+        private static <K> Map<K, long[]> snapshot(Map<K, Stats> stats) {
+            Map<K, long[]> map = new HashMap<>();
+            for (Map.Entry<K, Stats> e : stats.entrySet()) map.put(e.getKey(), e.getValue().sum());
+            return map;
+        }
+
+        private static <K> Map<K, long[]> diff(Map<K, long[]> now, Map<K, long[]> start) {
+            Map<K, long[]> map = new HashMap<>();
+            for (Map.Entry<K, long[]> e : now.entrySet()) {
+                long[] current = e.getValue();
+                long[] previous = start.getOrDefault(e.getKey(), new long[3]);
+                long[] d = new long[3];
+                for (int i = 0; i < 3; i++) d[i] = current[i] - previous[i];
+                if (d[0] > 0) map.put(e.getKey(), d);
+            }
+            return map;
+        }
+
+        /**
+         * @return Counters between {@code start} and this snapshot
+         */
+        public Window since(Window start) {
+            return new Window(this, start);
+        }
+
+        private static <K> Comparator<Entry<K>> byBytes() {
+            return Comparator.comparingLong((Entry<K> e) -> e.bytes).reversed().thenComparing(byCount());
+        }
+
+        private static <K> Comparator<Entry<K>> byCount() {
+            return Comparator.comparingLong((Entry<K> e) -> e.count).reversed();
+        }
+
+        private static <K> List<Entry<K>> sorted(Map<K, long[]> map, Comparator<Entry<K>> order) {
+            List<Entry<K>> list = new ArrayList<>();
+            for (Map.Entry<K, long[]> e : map.entrySet()) {
+                long[] v = e.getValue();
+                list.add(new Entry<>(e.getKey(), v[0], v[1], v[2]));
+            }
+            list.sort(order);
+            return list;
+        }
+
+        public List<Entry<Class<?>>> getOutByType() {
+            return sorted(outByType, byBytes());
+        }
+
+        public List<Entry<Class<?>>> getInByType() {
+            return sorted(inByType, byCount());
+        }
+
+        public List<Entry<String>> getOutByPlayer() {
+            return sorted(outByPlayer, byBytes());
+        }
+
+        public List<Entry<String>> getInByPlayer() {
+            return sorted(inByPlayer, byCount());
+        }
     }
 }
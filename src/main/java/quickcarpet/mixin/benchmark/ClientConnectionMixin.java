@@ -0,0 +1,29 @@
+package quickcarpet.mixin.benchmark;
+
+import io.netty.channel.ChannelHandlerContext;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.Packet;
+import net.minecraft.network.listener.PacketListener;
+import net.minecraft.network.packet.c2s.play.ChatMessageC2SPacket;
+import net.minecraft.network.packet.c2s.play.KeepAliveC2SPacket;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.Benchmark;
+
+@Feature("benchmark")
+@Mixin(ClientConnection.class)
+public abstract class ClientConnectionMixin {
+    @Shadow public abstract PacketListener getPacketListener();
+
+    @Inject(method = "channelRead0", at = @At("HEAD"), cancellable = true)
+    private void freezeInput(ChannelHandlerContext ctx, Packet<?> packet, CallbackInfo ci) {
+        if (!Benchmark.isInputFrozen() || !(getPacketListener() instanceof ServerPlayNetworkHandler)) return;
+        if (packet instanceof KeepAliveC2SPacket || packet instanceof ChatMessageC2SPacket) return;
+        ci.cancel();
+    }
+}
@@ -22,6 +22,6 @@ public class ClientConnectionMixin {
 
     @Inject(method = "channelRead0", at = @At("HEAD"))
     private void countPacketIn(ChannelHandlerContext channelHandlerContext_1, Packet<?> packet_1, CallbackInfo ci) {
-        PacketCounter.in();
+        PacketCounter.in(packet_1, PacketCounter.getPlayerName(((ClientConnection) (Object) this).getPacketListener()));
     }
 }
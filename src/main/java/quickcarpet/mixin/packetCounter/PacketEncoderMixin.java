@@ -0,0 +1,35 @@
+package quickcarpet.mixin.packetCounter;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import net.minecraft.network.Packet;
+import net.minecraft.network.PacketEncoder;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.logging.loghelpers.PacketCounter;
+
+@Feature("packetCounter")
+@Mixin(PacketEncoder.class)
+public class PacketEncoderMixin {
+    // encoders are bound to a single channel and thus a single event loop thread
+    @Unique
+    private int startIndex;
+    @Unique
+    private long startTime;
+
+    @Inject(method = "encode", at = @At("HEAD"))
+    private void startEncode(ChannelHandlerContext ctx, Packet<?> packet, ByteBuf buf, CallbackInfo ci) {
+        startIndex = buf.writerIndex();
+        startTime = System.nanoTime();
+    }
+
+    @Inject(method = "encode", at = @At("RETURN"))
+    private void endEncode(ChannelHandlerContext ctx, Packet<?> packet, ByteBuf buf, CallbackInfo ci) {
+        long time = System.nanoTime() - startTime;
+        PacketCounter.encoded(packet, PacketCounter.getPlayerName(ctx), buf.writerIndex() - startIndex, time);
+    }
+}
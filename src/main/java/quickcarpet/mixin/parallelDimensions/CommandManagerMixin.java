@@ -0,0 +1,26 @@
+package quickcarpet.mixin.parallelDimensions;
+
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.ParallelWorldTicker;
+
+@Feature("parallelDimensionTicking")
+@Mixin(CommandManager.class)
+public abstract class CommandManagerMixin {
+    /**
+     * Commands may access any dimension, so commands run by command blocks in any dimension,
+     * the overworld included, are deferred and report no success
+     */
+    @Inject(method = "execute", at = @At("HEAD"), cancellable = true)
+    private void deferCommand(ServerCommandSource source, String command, CallbackInfoReturnable<Integer> cir) {
+        if (!ParallelWorldTicker.isActive()) return;
+        CommandManager self = (CommandManager) (Object) this;
+        ParallelWorldTicker.defer(() -> self.execute(source, command));
+        cir.setReturnValue(0);
+    }
+}
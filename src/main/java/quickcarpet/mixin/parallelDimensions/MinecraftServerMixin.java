@@ -0,0 +1,27 @@
+package quickcarpet.mixin.parallelDimensions;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.ParallelWorldTicker;
+
+import java.util.function.BooleanSupplier;
+
+@Feature("parallelDimensionTicking")
+@Mixin(MinecraftServer.class)
+public class MinecraftServerMixin {
+    @Inject(method = "tickWorlds", at = @At(value = "CONSTANT", args = "stringValue=levels"))
+    private void startWorlds(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        ParallelWorldTicker.start((MinecraftServer) (Object) this, shouldKeepTicking);
+    }
+
+    @Redirect(method = "tickWorlds", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerWorld;tick(Ljava/util/function/BooleanSupplier;)V"))
+    private void tickWorld(ServerWorld world, BooleanSupplier shouldKeepTicking) {
+        ParallelWorldTicker.tick(world, shouldKeepTicking);
+    }
+}
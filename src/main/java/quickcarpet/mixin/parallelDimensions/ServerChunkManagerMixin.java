@@ -0,0 +1,26 @@
+package quickcarpet.mixin.parallelDimensions;
+
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.ParallelWorldTicker;
+
+@Feature("parallelDimensionTicking")
+@Mixin(ServerChunkManager.class)
+public class ServerChunkManagerMixin {
+    @Shadow @Final private Thread serverThread;
+    @Shadow @Final private ServerWorld world;
+
+    /**
+     * Chunks are loaded directly by the worker ticking this world instead of being handed to the server thread
+     */
+    @Redirect(method = "getChunk(IILnet/minecraft/world/chunk/ChunkStatus;Z)Lnet/minecraft/world/chunk/Chunk;", at = @At(value = "INVOKE", target = "Ljava/lang/Thread;currentThread()Ljava/lang/Thread;"))
+    private Thread getOwningThread() {
+        return ParallelWorldTicker.isTicking(world) ? serverThread : Thread.currentThread();
+    }
+}
@@ -0,0 +1,23 @@
+package quickcarpet.mixin.parallelDimensions;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.ParallelWorldTicker;
+
+@Feature("parallelDimensionTicking")
+@Mixin(ServerPlayerEntity.class)
+public abstract class ServerPlayerEntityMixin {
+    @Inject(method = "moveToWorld", at = @At("HEAD"), cancellable = true)
+    private void deferMoveToWorld(ServerWorld destination, CallbackInfoReturnable<Entity> cir) {
+        if (!ParallelWorldTicker.isActive()) return;
+        ServerPlayerEntity self = (ServerPlayerEntity) (Object) this;
+        ParallelWorldTicker.defer(() -> self.moveToWorld(destination));
+        cir.setReturnValue(null);
+    }
+}
@@ -0,0 +1,21 @@
+package quickcarpet.mixin.parallelDimensions;
+
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.ParallelWorldTicker;
+
+@Feature("parallelDimensionTicking")
+@Mixin(World.class)
+public class WorldMixin {
+    @Shadow @Final private Thread thread;
+
+    @Redirect(method = "getBlockEntity", at = @At(value = "INVOKE", target = "Ljava/lang/Thread;currentThread()Ljava/lang/Thread;"))
+    private Thread getOwningThread() {
+        return ParallelWorldTicker.isTicking((World) (Object) this) ? thread : Thread.currentThread();
+    }
+}
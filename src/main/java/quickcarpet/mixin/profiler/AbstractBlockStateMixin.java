@@ -0,0 +1,29 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.block.AbstractBlock;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldAccess;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(AbstractBlock.AbstractBlockState.class)
+public abstract class AbstractBlockStateMixin {
+    @Shadow public abstract Block getBlock();
+
+    @Inject(method = "getStateForNeighborUpdate", at = @At("HEAD"))
+    private void countShapeUpdate(Direction direction, BlockState neighborState, WorldAccess world, BlockPos pos, BlockPos neighborPos, CallbackInfoReturnable<BlockState> cir) {
+        if (world instanceof World && !((World) world).isClient) {
+            CarpetProfiler.shapeUpdate((World) world, neighborPos, neighborState.getBlock(), getBlock());
+        }
+    }
+}
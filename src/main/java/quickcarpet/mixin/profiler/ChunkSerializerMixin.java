@@ -0,0 +1,29 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.structure.StructureManager;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(ChunkSerializer.class)
+public class ChunkSerializerMixin {
+    @Inject(method = "deserialize", at = @At("HEAD"))
+    private static void startLoad(ServerWorld world, StructureManager structureManager, PointOfInterestStorage poiStorage, ChunkPos pos, CompoundTag tag, CallbackInfoReturnable<ProtoChunk> cir) {
+        CarpetProfiler.startChunkActivity(world, CarpetProfiler.ChunkActivity.LOAD);
+    }
+
+    @Inject(method = "deserialize", at = @At("RETURN"))
+    private static void endLoad(ServerWorld world, StructureManager structureManager, PointOfInterestStorage poiStorage, ChunkPos pos, CompoundTag tag, CallbackInfoReturnable<ProtoChunk> cir) {
+        CarpetProfiler.endChunkActivity(world, CarpetProfiler.ChunkActivity.LOAD);
+    }
+}
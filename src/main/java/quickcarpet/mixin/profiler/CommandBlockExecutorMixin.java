@@ -0,0 +1,31 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.world.CommandBlockExecutor;
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(CommandBlockExecutor.class)
+public abstract class CommandBlockExecutorMixin {
+    @Shadow public abstract String getCommand();
+
+    @Inject(method = "execute", at = @At("HEAD"))
+    private void startCommandBlock(World world, CallbackInfoReturnable<Boolean> cir) {
+        if (world.isClient || !CarpetProfiler.isActive(CarpetProfiler.ReportType.COMMANDS)) return;
+        String command = getCommand();
+        if (command.startsWith("/")) command = command.substring(1);
+        int space = command.indexOf(' ');
+        CarpetProfiler.startCommand(CarpetProfiler.CommandType.COMMAND_BLOCK, space < 0 ? command : command.substring(0, space));
+    }
+
+    @Inject(method = "execute", at = @At("RETURN"))
+    private void endCommandBlock(World world, CallbackInfoReturnable<Boolean> cir) {
+        if (!world.isClient) CarpetProfiler.endCommand();
+    }
+}
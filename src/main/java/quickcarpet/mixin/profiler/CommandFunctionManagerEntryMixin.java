@@ -0,0 +1,30 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.server.function.CommandFunction;
+import net.minecraft.server.function.CommandFunctionManager;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+import java.util.ArrayDeque;
+
+@Feature("profiler")
+@Mixin(CommandFunctionManager.Entry.class)
+public class CommandFunctionManagerEntryMixin {
+    @Shadow @Final private CommandFunction.Element element;
+
+    @Inject(method = "execute", at = @At("HEAD"))
+    private void startElement(ArrayDeque<CommandFunctionManager.Entry> stack, int maxChainLength, CallbackInfo ci) {
+        CarpetProfiler.startFunctionElement(element);
+    }
+
+    @Inject(method = "execute", at = @At("RETURN"))
+    private void endElement(ArrayDeque<CommandFunctionManager.Entry> stack, int maxChainLength, CallbackInfo ci) {
+        CarpetProfiler.endFunctionElement(element);
+    }
+}
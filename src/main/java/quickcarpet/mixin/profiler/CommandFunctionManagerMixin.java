@@ -0,0 +1,20 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.function.CommandFunction;
+import net.minecraft.server.function.CommandFunctionManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(CommandFunctionManager.class)
+public class CommandFunctionManagerMixin {
+    @Inject(method = "execute", at = @At("HEAD"))
+    private void callFunction(CommandFunction function, ServerCommandSource source, CallbackInfoReturnable<Integer> cir) {
+        CarpetProfiler.callFunction(function);
+    }
+}
@@ -33,6 +33,16 @@ public class MinecraftServerMixin {
         CarpetProfiler.endSection(null);
     }
 
+    @Inject(method = "tickWorlds", at = @At(value = "CONSTANT", args = "stringValue=commandFunctions"))
+    private void startCommandFunctions(BooleanSupplier booleanSupplier_1, CallbackInfo ci) {
+        CarpetProfiler.startSection(null, CarpetProfiler.SectionType.COMMANDS);
+    }
+
+    @Inject(method = "tickWorlds", at = @At(value = "CONSTANT", args = "stringValue=levels"))
+    private void endCommandFunctions(BooleanSupplier booleanSupplier_1, CallbackInfo ci) {
+        CarpetProfiler.endSection(null);
+    }
+
     @Inject(method = "tickWorlds", at = @At(value = "CONSTANT", args = "stringValue=connection"))
     private void startNetwork(BooleanSupplier booleanSupplier_1, CallbackInfo ci) {
         CarpetProfiler.startSection(null, CarpetProfiler.SectionType.NETWORK);
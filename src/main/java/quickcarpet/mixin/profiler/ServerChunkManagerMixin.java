@@ -0,0 +1,57 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.util.thread.ThreadExecutor;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Coerce;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+import java.util.function.BooleanSupplier;
+
+@Feature("profiler")
+@Mixin(ServerChunkManager.class)
+public abstract class ServerChunkManagerMixin {
+    @Shadow @Final private ServerWorld world;
+
+    @Shadow public abstract int getPendingTasks();
+
+    @Redirect(
+            method = "tick(Ljava/util/function/BooleanSupplier;)V",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ThreadedAnvilChunkStorage;tick(Ljava/util/function/BooleanSupplier;)V")
+    )
+    private void tickUnload(ThreadedAnvilChunkStorage storage, BooleanSupplier shouldKeepTicking) {
+        CarpetProfiler.sampleChunkQueues(world, getPendingTasks());
+        CarpetProfiler.startSection(world, CarpetProfiler.SectionType.CHUNK_UNLOAD);
+        storage.tick(shouldKeepTicking);
+        CarpetProfiler.endSection(world);
+    }
+
+    @Redirect(
+            method = "getChunk(IILnet/minecraft/world/chunk/ChunkStatus;Z)Lnet/minecraft/world/chunk/Chunk;",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerChunkManager$MainThreadExecutor;runTasks(Ljava/util/function/BooleanSupplier;)V")
+    )
+    private void waitForChunk(@Coerce ThreadExecutor<?> executor, BooleanSupplier done) {
+        CarpetProfiler.startChunkActivity(world, CarpetProfiler.ChunkActivity.WAIT);
+        executor.runTasks(done);
+        CarpetProfiler.endChunkActivity(world, CarpetProfiler.ChunkActivity.WAIT);
+    }
+
+    @Inject(method = "executeQueuedTasks", at = @At("HEAD"))
+    private void startTasks(CallbackInfoReturnable<Boolean> cir) {
+        CarpetProfiler.startChunkActivity(world, CarpetProfiler.ChunkActivity.TASKS);
+    }
+
+    @Inject(method = "executeQueuedTasks", at = @At("RETURN"))
+    private void endTasks(CallbackInfoReturnable<Boolean> cir) {
+        CarpetProfiler.endChunkActivity(world, CarpetProfiler.ChunkActivity.TASKS);
+    }
+}
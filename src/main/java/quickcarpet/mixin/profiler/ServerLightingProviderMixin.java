@@ -0,0 +1,21 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.server.world.ServerLightingProvider;
+import net.minecraft.world.chunk.Chunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+import java.util.concurrent.CompletableFuture;
+
+@Feature("profiler")
+@Mixin(ServerLightingProvider.class)
+public class ServerLightingProviderMixin {
+    @Inject(method = "light", at = @At("HEAD"))
+    private void countLight(Chunk chunk, boolean excludeBlocks, CallbackInfoReturnable<CompletableFuture<Chunk>> cir) {
+        CarpetProfiler.chunkLit();
+    }
+}
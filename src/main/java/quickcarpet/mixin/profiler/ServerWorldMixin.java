@@ -1,12 +1,16 @@
 package quickcarpet.mixin.profiler;
 
 import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.fluid.Fluid;
+import net.minecraft.fluid.FluidState;
 import net.minecraft.server.world.ServerTickScheduler;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.profiler.Profiler;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.MutableWorldProperties;
+import net.minecraft.world.ScheduledTick;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.WorldChunk;
 import net.minecraft.world.dimension.DimensionType;
@@ -18,6 +22,7 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import quickcarpet.api.annotation.Feature;
 import quickcarpet.utils.CarpetProfiler;
 
+import java.util.Random;
 import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
@@ -34,6 +39,7 @@ public abstract class ServerWorldMixin extends World {
     )
     private void tickBlocks(ServerTickScheduler<Block> blockTickScheduler) {
         CarpetProfiler.startSection(this, CarpetProfiler.SectionType.BLOCKS);
+        CarpetProfiler.sampleTickQueue(this, false, blockTickScheduler.getTicks());
         blockTickScheduler.tick();
         CarpetProfiler.endSection(this);
     }
@@ -44,10 +50,31 @@ public abstract class ServerWorldMixin extends World {
     )
     private void tickFluids(ServerTickScheduler<Fluid> fluidTickScheduler) {
         CarpetProfiler.startSection(this, CarpetProfiler.SectionType.FLUIDS);
+        CarpetProfiler.sampleTickQueue(this, true, fluidTickScheduler.getTicks());
         fluidTickScheduler.tick();
         CarpetProfiler.endSection(this);
     }
 
+    @Inject(method = "tickBlock", at = @At("HEAD"))
+    private void startScheduledBlockTick(ScheduledTick<Block> tick, CallbackInfo ci) {
+        CarpetProfiler.startScheduledTick(this, tick.getObject(), tick.pos);
+    }
+
+    @Inject(method = "tickBlock", at = @At("TAIL"))
+    private void endScheduledBlockTick(ScheduledTick<Block> tick, CallbackInfo ci) {
+        CarpetProfiler.endScheduledTick(this);
+    }
+
+    @Inject(method = "tickFluid", at = @At("HEAD"))
+    private void startScheduledFluidTick(ScheduledTick<Fluid> tick, CallbackInfo ci) {
+        CarpetProfiler.startScheduledTick(this, tick.getObject(), tick.pos);
+    }
+
+    @Inject(method = "tickFluid", at = @At("TAIL"))
+    private void endScheduledFluidTick(ScheduledTick<Fluid> tick, CallbackInfo ci) {
+        CarpetProfiler.endScheduledTick(this);
+    }
+
     @Inject(method = "tickChunk", at = @At("HEAD"))
     private void startTickChunk(WorldChunk worldChunk_1, int int_1, CallbackInfo ci) {
         CarpetProfiler.startSection(this, CarpetProfiler.SectionType.RANDOM_TICKS);
@@ -58,6 +85,36 @@ public abstract class ServerWorldMixin extends World {
         CarpetProfiler.endSection(this);
     }
 
+    @Inject(method = "tickChunk", at = @At(value = "CONSTANT", args = "stringValue=thunder"))
+    private void startWeather(WorldChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        CarpetProfiler.startWeather(this);
+    }
+
+    @Inject(method = "tickChunk", at = @At(value = "CONSTANT", args = "stringValue=tickBlocks"))
+    private void endWeather(WorldChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        CarpetProfiler.endWeather(this);
+    }
+
+    @Redirect(
+            method = "tickChunk",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/block/BlockState;randomTick(Lnet/minecraft/server/world/ServerWorld;Lnet/minecraft/util/math/BlockPos;Ljava/util/Random;)V")
+    )
+    private void randomTickBlock(BlockState state, ServerWorld world, BlockPos pos, Random random) {
+        CarpetProfiler.startRandomTick(this, state.getBlock());
+        state.randomTick(world, pos, random);
+        CarpetProfiler.endRandomTick(this);
+    }
+
+    @Redirect(
+            method = "tickChunk",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/fluid/FluidState;onRandomTick(Lnet/minecraft/world/World;Lnet/minecraft/util/math/BlockPos;Ljava/util/Random;)V")
+    )
+    private void randomTickFluid(FluidState state, World world, BlockPos pos, Random random) {
+        CarpetProfiler.startRandomTick(this, state.getFluid());
+        state.onRandomTick(world, pos, random);
+        CarpetProfiler.endRandomTick(this);
+    }
+
     @Inject(method = "tick", at = @At(value = "CONSTANT", args = "stringValue=raid"))
     private void startRaid(BooleanSupplier booleanSupplier_1, CallbackInfo ci) {
         CarpetProfiler.startSection(this, CarpetProfiler.SectionType.VILLAGES);
@@ -0,0 +1,29 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.world.chunk.Chunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(ThreadedAnvilChunkStorage.class)
+public class ThreadedAnvilChunkStorageMixin {
+    @Shadow @Final private ServerWorld world;
+
+    @Inject(method = "save(Lnet/minecraft/world/chunk/Chunk;)Z", at = @At("HEAD"))
+    private void startSave(Chunk chunk, CallbackInfoReturnable<Boolean> cir) {
+        CarpetProfiler.startChunkActivity(world, CarpetProfiler.ChunkActivity.SAVE);
+    }
+
+    @Inject(method = "save(Lnet/minecraft/world/chunk/Chunk;)Z", at = @At("RETURN"))
+    private void endSave(Chunk chunk, CallbackInfoReturnable<Boolean> cir) {
+        CarpetProfiler.endChunkActivity(world, CarpetProfiler.ChunkActivity.SAVE);
+    }
+}
@@ -0,0 +1,23 @@
+package quickcarpet.mixin.profiler;
+
+import net.minecraft.world.timer.Timer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("profiler")
+@Mixin(Timer.class)
+public class TimerMixin {
+    @Inject(method = "processEvents", at = @At("HEAD"))
+    private void startScheduled(Object server, long time, CallbackInfo ci) {
+        CarpetProfiler.startCommand(CarpetProfiler.CommandType.SCHEDULE, null);
+    }
+
+    @Inject(method = "processEvents", at = @At("TAIL"))
+    private void endScheduled(Object server, long time, CallbackInfo ci) {
+        CarpetProfiler.endCommand();
+    }
+}
@@ -1,8 +1,10 @@
 package quickcarpet.mixin.profiler;
 
+import net.minecraft.block.Block;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.util.Tickable;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
@@ -50,6 +52,13 @@ public class WorldMixin {
         }
     }
 
+    @Inject(method = "updateNeighbor", at = @At("HEAD"))
+    private void countNeighborUpdate(BlockPos pos, Block sourceBlock, BlockPos sourcePos, CallbackInfo ci) {
+        if (!this.isClient) {
+            CarpetProfiler.neighborUpdate((World) (Object) this, sourcePos, sourceBlock, pos);
+        }
+    }
+
     @Inject(method = "tickEntity", at = @At("HEAD"))
     private void startEntity(Consumer<Entity> tick, Entity e, CallbackInfo ci) {
         if (!this.isClient) {
@@ -1,6 +1,8 @@
 package quickcarpet.mixin.tickSpeed;
 
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.PlayerManager;
+import net.minecraft.server.ServerNetworkIo;
 import net.minecraft.util.TickDurationMonitor;
 import net.minecraft.util.Util;
 import net.minecraft.util.profiler.Profiler;
@@ -8,20 +10,26 @@ import org.apache.logging.log4j.Logger;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import quickcarpet.api.annotation.Feature;
 import quickcarpet.helper.TickSpeed;
+import quickcarpet.settings.Settings;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BooleanSupplier;
 
 @Feature("tickSpeed")
 @Mixin(MinecraftServer.class)
 public abstract class MinecraftServerMixin {
     @Shadow @Final private static Logger LOGGER;
+    @Unique private static final long SPIN_NANOS = 500_000;
+    @Unique private static final long PARK_NANOS = 100_000;
+    @Unique private static final int TURBO_NETWORK_INTERVAL = 20;
     @Shadow private volatile boolean running;
     @Shadow private long timeReference;
     @Shadow private long lastTimeReference;
@@ -30,15 +38,33 @@ public abstract class MinecraftServerMixin {
     @Shadow private volatile boolean loading;
     @Shadow private boolean waitingForNextTick;
     @Shadow private long field_19248;
+    @Shadow private int ticks;
 
     @Shadow protected abstract boolean shouldKeepTicking();
     @Shadow protected abstract void method_16208();
     @Shadow protected abstract void tick(BooleanSupplier booleanSupplier);
+    @Shadow public abstract boolean runTask();
 
     @Shadow protected abstract void startMonitor(@Nullable TickDurationMonitor arg);
 
     @Shadow protected abstract void endMonitor(@Nullable TickDurationMonitor arg);
 
+    @Redirect(method = "tickWorlds", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/ServerNetworkIo;tick()V"))
+    private void batchNetworkDuringTurboWarp(ServerNetworkIo networkIo) {
+        if (!TickSpeed.getServerTickSpeed().isTurboWarping() || this.ticks % TURBO_NETWORK_INTERVAL == 0) networkIo.tick();
+    }
+
+    @Redirect(method = "tick", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/PlayerManager;saveAllPlayerData()V"))
+    private void skipPlayerAutosaveDuringTurboWarp(PlayerManager playerManager) {
+        if (!TickSpeed.getServerTickSpeed().isTurboWarping()) playerManager.saveAllPlayerData();
+    }
+
+    @Redirect(method = "tick", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/MinecraftServer;save(ZZZ)Z"))
+    private boolean skipAutosaveDuringTurboWarp(MinecraftServer server, boolean suppressLogs, boolean flush, boolean force) {
+        if (TickSpeed.getServerTickSpeed().isTurboWarping()) return false;
+        return server.save(suppressLogs, flush, force);
+    }
+
     // Cancel a while statement
     @Redirect(method = "runServer", at = @At(value = "FIELD", target = "Lnet/minecraft/server/MinecraftServer;running:Z"))
     private boolean cancelRunLoop(MinecraftServer server) {
@@ -53,7 +79,12 @@ public abstract class MinecraftServerMixin {
     private void modifiedRunLoop(CallbackInfo ci) {
         TickSpeed tickSpeed = TickSpeed.getServerTickSpeed();
         float partialTimeReference = 0;
+        long nextTickNanos = 0;
+        boolean wasPrecise = false;
         while (this.running) {
+            boolean precise = Settings.preciseTickPacing;
+            if (precise && !wasPrecise) nextTickNanos = this.timeReference * 1_000_000L;
+            wasPrecise = precise;
             //long long_1 = SystemUtil.getMeasuringTimeMs() - this.timeReference;
             //CM deciding on tick speed
             float mspt = 0;
@@ -61,9 +92,12 @@ public abstract class MinecraftServerMixin {
             if (tickSpeed.tickWarpStartTime != 0 && tickSpeed.continueWarp()) {
                 //making sure server won't flop after the warp or if the warp is interrupted
                 this.timeReference = this.lastTimeReference = Util.getMeasuringTimeMs();
+                nextTickNanos = Util.getMeasuringTimeNano();
             } else {
                 mspt = tickSpeed.msptGoal; // regular tick
-                behind = Util.getMeasuringTimeMs() - this.timeReference;
+                long late = Util.getMeasuringTimeNano() - (precise ? nextTickNanos : this.timeReference * 1_000_000L);
+                tickSpeed.recordPacingError(late);
+                behind = late / 1_000_000L;
             }
             //end tick deciding
             //smoothed out delay to include mspt component. With 50L gives defaults.
@@ -72,13 +106,19 @@ public abstract class MinecraftServerMixin {
                 LOGGER.warn("Can't keep up! Is the server overloaded? Running {}ms or {} ticks behind", behind, ticks);
                 this.timeReference += ticks * mspt;//50L;
                 this.lastTimeReference = this.timeReference;
+                nextTickNanos += (long) (ticks * mspt * 1e6);
             }
 
-            partialTimeReference += mspt - (long) mspt;
-            this.timeReference += (long) mspt;//50L;
-            if (partialTimeReference > 1) {
-                partialTimeReference--;
-                timeReference++;
+            if (precise) {
+                nextTickNanos += (long) (mspt * 1e6);
+                this.timeReference = nextTickNanos / 1_000_000L;
+            } else {
+                partialTimeReference += mspt - (long) mspt;
+                this.timeReference += (long) mspt;//50L;
+                if (partialTimeReference > 1) {
+                    partialTimeReference--;
+                    timeReference++;
+                }
             }
             TickDurationMonitor monitor = TickDurationMonitor.create("Server");
             this.startMonitor(monitor);
@@ -88,7 +128,11 @@ public abstract class MinecraftServerMixin {
             this.profiler.swap("nextTickWait");
             this.waitingForNextTick = true;
             this.field_19248 = Math.max(Util.getMeasuringTimeMs() + (long) mspt, this.timeReference);
-            this.method_16208();
+            if (precise) {
+                this.waitUntil(nextTickNanos);
+            } else {
+                this.method_16208();
+            }
             this.profiler.pop();
             this.profiler.endTick();
             this.endMonitor(monitor);
@@ -97,4 +141,22 @@ public abstract class MinecraftServerMixin {
 
     }
 
+    /**
+     * Runs pending tasks and parks in short intervals until shortly before the deadline,
+     * then spins to start the next tick as close to the deadline as possible
+     * @param deadline Start of the next tick in {@link Util#getMeasuringTimeNano()} time
+     */
+    @Unique
+    private void waitUntil(long deadline) {
+        while (true) {
+            long remaining = deadline - Util.getMeasuringTimeNano();
+            if (remaining <= 0) return;
+            if (remaining <= SPIN_NANOS) {
+                Thread.yield();
+            } else if (!this.runTask()) {
+                LockSupport.parkNanos("waiting for next tick", Math.min(remaining - SPIN_NANOS, PARK_NANOS));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,32 @@
+package quickcarpet.mixin.tickSpeed;
+
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerTickScheduler;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.TickSpeed;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("tickSpeed")
+@Mixin(ServerTickScheduler.class)
+public class ServerTickSchedulerMixin {
+    @Shadow @Final private ServerWorld world;
+
+    /**
+     * Ticks in frozen areas are treated like ticks in chunks that are not ticking: they stay scheduled until the area is unfrozen
+     */
+    @Redirect(method = "tick", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerChunkManager;shouldTickBlock(Lnet/minecraft/util/math/BlockPos;)Z"))
+    private boolean tickFreezeScheduled(ServerChunkManager chunkManager, BlockPos pos) {
+        if (TickSpeed.getServerTickSpeed().frozenAreas.isFrozen(world, pos)) {
+            CarpetProfiler.frozenScheduledTick(world);
+            return false;
+        }
+        return chunkManager.shouldTickBlock(pos);
+    }
+}
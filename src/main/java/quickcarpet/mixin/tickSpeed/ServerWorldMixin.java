@@ -1,5 +1,7 @@
 package quickcarpet.mixin.tickSpeed;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.minecraft.entity.Entity;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerChunkManager;
 import net.minecraft.server.world.ServerWorld;
@@ -13,9 +15,11 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import quickcarpet.api.annotation.Feature;
 import quickcarpet.helper.TickSpeed;
+import quickcarpet.utils.CarpetProfiler;
 import quickcarpet.utils.Reflection;
 
 import java.util.List;
@@ -26,6 +30,7 @@ import java.util.function.Supplier;
 @Mixin(ServerWorld.class)
 public abstract class ServerWorldMixin extends World {
     @Shadow @Final private List<ServerPlayerEntity> players;
+    @Shadow @Final private Int2ObjectMap<Entity> entitiesById;
 
     @Shadow public abstract ServerChunkManager getChunkManager();
 
@@ -35,10 +40,21 @@ public abstract class ServerWorldMixin extends World {
 
     @Inject(method = "tick", at = @At("HEAD"), cancellable = true)
     private void tickFreeze(BooleanSupplier shouldContinueTicking, CallbackInfo ci) {
-        if (TickSpeed.getServerTickSpeed().isPaused()) {
+        TickSpeed tickSpeed = TickSpeed.getServerTickSpeed();
+        if (tickSpeed.isPaused() || tickSpeed.frozenAreas.isFrozen(this)) {
+            CarpetProfiler.frozenWorld(this, this.entitiesById.size(), this.tickingBlockEntities.size());
             for (ServerPlayerEntity p : this.players) p.tick();
             Reflection.tickChunkManager(this.getChunkManager(), shouldContinueTicking);
             ci.cancel();
         }
     }
+
+    @Redirect(method = "tickEntity", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerChunkManager;shouldTickEntity(Lnet/minecraft/entity/Entity;)Z"))
+    private boolean tickFreezeEntities(ServerChunkManager chunkManager, Entity entity) {
+        if (TickSpeed.getServerTickSpeed().frozenAreas.isFrozen(this, entity.getBlockPos())) {
+            CarpetProfiler.frozenEntity(this, entity);
+            return false;
+        }
+        return chunkManager.shouldTickEntity(entity);
+    }
 }
@@ -0,0 +1,28 @@
+package quickcarpet.mixin.tickSpeed;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkManager;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import quickcarpet.api.annotation.Feature;
+import quickcarpet.helper.TickSpeed;
+import quickcarpet.utils.CarpetProfiler;
+
+@Feature("tickSpeed")
+@Mixin(World.class)
+public class WorldMixin {
+    @Shadow @Final public boolean isClient;
+
+    @Redirect(method = "tickBlockEntities", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/chunk/ChunkManager;shouldTickBlock(Lnet/minecraft/util/math/BlockPos;)Z"))
+    private boolean tickFreezeBlockEntities(ChunkManager chunkManager, BlockPos pos) {
+        if (!this.isClient && TickSpeed.getServerTickSpeed().frozenAreas.isFrozen((World) (Object) this, pos)) {
+            CarpetProfiler.frozenBlockEntity((World) (Object) this);
+            return false;
+        }
+        return chunkManager.shouldTickBlock(pos);
+    }
+}
@@ -3,4 +3,20 @@ package quickcarpet.pubsub;
 public interface PubSubCallback {
     boolean shouldUpdate(int tickCounter);
     void update(PubSubNode node);
+
+    /**
+     * Lets the {@link PubSubScheduler} wake this callback only in the ticks where
+     * {@code tickCounter % interval == phase} instead of asking {@link #shouldUpdate(int)} every tick
+     * @return The update interval in ticks, {@code 0} to never update or {@code -1} if the interval is not fixed
+     */
+    default int getInterval() {
+        return -1;
+    }
+
+    /**
+     * @return The tick within the {@link #getInterval() interval} in which to update
+     */
+    default int getPhase() {
+        return 0;
+    }
 }
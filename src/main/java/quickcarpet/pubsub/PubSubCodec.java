@@ -0,0 +1,221 @@
+package quickcarpet.pubsub;
+
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.PacketByteBuf;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+
+import static quickcarpet.pubsub.PubSubMessenger.*;
+
+/**
+ * Serialization of PubSub values shared by the server and the client
+ */
+public final class PubSubCodec {
+    private PubSubCodec() {}
+
+    static int getType(String nodeName, Object value) {
+        if (value instanceof Tag) return TYPE_NBT;
+        if (value instanceof String) return TYPE_STRING;
+        if (value instanceof Integer) return TYPE_INT;
+        if (value instanceof Float) return TYPE_FLOAT;
+        if (value instanceof Long) return TYPE_LONG;
+        if (value instanceof Double) return TYPE_DOUBLE;
+        if (value instanceof Boolean) return TYPE_BOOLEAN;
+        throw new IllegalArgumentException("Can't serialize " + nodeName + ": " + value.getClass().getSimpleName());
+    }
+
+    static void writeValue(PacketByteBuf buf, int type, Object value) {
+        switch (type) {
+            case TYPE_NBT: {
+                ByteBufOutputStream out = new ByteBufOutputStream(buf);
+                try {
+                    NbtIo.write(makeCompound((Tag) value), out);
+                } catch (IOException ignored) {} // ByteBufOutputStream doesn't throw IOExceptions
+                break;
+            }
+            case TYPE_STRING: buf.writeString((String) value); break;
+            case TYPE_INT: buf.writeInt((Integer) value); break;
+            case TYPE_FLOAT: buf.writeFloat((Float) value); break;
+            case TYPE_LONG: buf.writeLong((Long) value); break;
+            case TYPE_DOUBLE: buf.writeDouble((Double) value); break;
+            case TYPE_BOOLEAN: buf.writeBoolean((Boolean) value); break;
+        }
+    }
+
+    /**
+     * @return The value, or {@code null} for an empty NBT value
+     * @throws IllegalArgumentException If the type is unknown
+     */
+    @Nullable
+    public static Object readValue(PacketByteBuf buf, int type) {
+        switch (type) {
+            case TYPE_NBT: {
+                CompoundTag compound = buf.readCompoundTag();
+                if (compound == null) return null;
+                return compound.contains("") ? compound.get("") : compound;
+            }
+            case TYPE_STRING: return buf.readString();
+            case TYPE_INT: return buf.readInt();
+            case TYPE_FLOAT: return buf.readFloat();
+            case TYPE_LONG: return buf.readLong();
+            case TYPE_DOUBLE: return buf.readDouble();
+            case TYPE_BOOLEAN: return buf.readBoolean();
+        }
+        throw new IllegalArgumentException("Unknown value type " + type);
+    }
+
+    private static CompoundTag makeCompound(Tag tag) {
+        if (tag instanceof CompoundTag) return (CompoundTag) tag;
+        CompoundTag compound = new CompoundTag();
+        compound.put("", tag);
+        return compound;
+    }
+
+    public static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    public static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    public static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    public static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /*
+        Packet format (framed by PacketSplitter):
+        id : varint = PACKET_S2C_UPDATE_COMPACT
+        size : varint {
+            key : varint = node id << 1 | 1 if the name follows
+            node : string, only the first time a node is sent, deltas of that entry start from zero
+            type : varint
+            value : type dependent, TYPE_INT and TYPE_LONG as zigzag varint delta to the previous value of the node
+        }[size]
+        Values equal to the previous value of their node are omitted.
+     */
+
+    /**
+     * Node ids and last sent values of a client using {@link PubSubMessenger#PROTOCOL_COMPACT}
+     */
+    public static final class Encoder {
+        private final Map<PubSubNode, Integer> ids = new HashMap<>();
+        private final Map<PubSubNode, Object> values = new HashMap<>();
+        private final Set<PubSubNode> forgotten = new HashSet<>();
+
+        /**
+         * @return The update packet, or {@code null} if no value changed
+         */
+        @Nullable
+        public PacketByteBuf encode(Map<PubSubNode, Object> updates) {
+            List<Map.Entry<PubSubNode, Object>> changed = new ArrayList<>(updates.size());
+            for (Map.Entry<PubSubNode, Object> update : updates.entrySet()) {
+                PubSubNode node = update.getKey();
+                boolean resend = forgotten.remove(node);
+                if (resend || !update.getValue().equals(values.get(node))) changed.add(update);
+            }
+            if (changed.isEmpty()) return null;
+            PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+            buf.writeVarInt(PACKET_S2C_UPDATE_COMPACT);
+            buf.writeVarInt(changed.size());
+            for (Map.Entry<PubSubNode, Object> update : changed) {
+                PubSubNode node = update.getKey();
+                Object value = update.getValue();
+                int type = getType(node.fullName, value);
+                Integer id = ids.get(node);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(node, id);
+                    buf.writeVarInt(id << 1 | 1);
+                    buf.writeString(node.fullName);
+                } else {
+                    buf.writeVarInt(id << 1);
+                }
+                buf.writeVarInt(type);
+                Object previous = values.put(node, value instanceof Tag ? ((Tag) value).copy() : value);
+                if (type == TYPE_INT) {
+                    int base = previous instanceof Integer ? (Integer) previous : 0;
+                    buf.writeVarInt(zigzag((Integer) value - base));
+                } else if (type == TYPE_LONG) {
+                    long base = previous instanceof Long ? (Long) previous : 0;
+                    buf.writeVarLong(zigzag((Long) value - base));
+                } else {
+                    writeValue(buf, type, value);
+                }
+            }
+            return buf;
+        }
+
+        /**
+         * Forgets the last values of a branch after unsubscribing, so they are sent again on the next subscription.
+         * The values are kept as delta base, the client still has them.
+         */
+        public void forget(PubSubNode branch) {
+            for (PubSubNode node : values.keySet()) {
+                for (PubSubNode n = node; n != null; n = n.parent) {
+                    if (n == branch) {
+                        forgotten.add(node);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Node names and last received values on the client side of {@link PubSubMessenger#PROTOCOL_COMPACT}
+     */
+    public static final class Decoder {
+        private final Int2ObjectMap<String> names = new Int2ObjectOpenHashMap<>();
+        private final Map<String, Object> values = new HashMap<>();
+
+        /**
+         * Reads a {@link PubSubMessenger#PACKET_S2C_UPDATE_COMPACT} packet after its id
+         * @return The changed values by node name
+         * @throws IllegalArgumentException If the packet references unknown ids or types
+         */
+        public Map<String, Object> decode(PacketByteBuf buf) {
+            int numUpdates = buf.readVarInt();
+            Map<String, Object> updates = new LinkedHashMap<>(numUpdates);
+            for (int i = 0; i < numUpdates; i++) {
+                int key = buf.readVarInt();
+                String name;
+                if ((key & 1) != 0) {
+                    name = buf.readString();
+                    names.put(key >>> 1, name);
+                } else {
+                    name = names.get(key >>> 1);
+                    if (name == null) throw new IllegalArgumentException("Unknown node id " + (key >>> 1));
+                }
+                int type = buf.readVarInt();
+                // the first use of an id starts from zero, even if an earlier encoder sent the same node
+                Object previous = (key & 1) != 0 ? null : values.get(name);
+                Object value;
+                if (type == TYPE_INT) {
+                    int base = previous instanceof Integer ? (Integer) previous : 0;
+                    value = base + unzigzag(buf.readVarInt());
+                } else if (type == TYPE_LONG) {
+                    long base = previous instanceof Long ? (Long) previous : 0;
+                    value = base + unzigzag(buf.readVarLong());
+                } else {
+                    value = readValue(buf, type);
+                }
+                values.put(name, value);
+                if (value != null) updates.put(name, value);
+            }
+            return updates;
+        }
+    }
+}
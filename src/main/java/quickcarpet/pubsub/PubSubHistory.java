@@ -0,0 +1,117 @@
+package quickcarpet.pubsub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded history of the numeric values of a node, kept at several resolutions.
+ * Every resolution averages the values published within one bucket of ticks and keeps
+ * a fixed number of buckets in primitive ring buffers.
+ * @see PubSubManager#enableHistory(PubSubNode)
+ */
+public final class PubSubHistory {
+    /**
+     * Values are recorded when a node publishes them, so a node only fills the buckets of the ticks
+     * its callbacks run in. At {@link #TICK} a node published every 20 ticks, like
+     * {@code minecraft.performance.mspt}, has one sample per second covering the last 20 minutes.
+     */
+    public enum Resolution {
+        TICK(1, 1200),
+        SECOND(20, 3600),
+        MINUTE(1200, 1440);
+
+        /**
+         * Length of a bucket in ticks
+         */
+        public final int ticks;
+        /**
+         * Maximum number of buckets kept
+         */
+        public final int capacity;
+
+        Resolution(int ticks, int capacity) {
+            this.ticks = ticks;
+            this.capacity = capacity;
+        }
+    }
+
+    public static final class Sample {
+        /**
+         * Server tick at the start of the bucket
+         */
+        public final int tick;
+        public final double value;
+
+        public Sample(int tick, double value) {
+            this.tick = tick;
+            this.value = value;
+        }
+    }
+
+    private static final class Ring {
+        final Resolution resolution;
+        final int[] ticks;
+        final double[] values;
+        int end;
+        int size;
+        int bucket;
+        double sum;
+        int count;
+
+        Ring(Resolution resolution) {
+            this.resolution = resolution;
+            this.ticks = new int[resolution.capacity];
+            this.values = new double[resolution.capacity];
+        }
+
+        void record(int tick, double value) {
+            int bucket = tick - Math.floorMod(tick, resolution.ticks);
+            if (count > 0 && bucket != this.bucket) commit();
+            this.bucket = bucket;
+            sum += value;
+            count++;
+        }
+
+        private void commit() {
+            ticks[end] = bucket;
+            values[end] = sum / count;
+            end = (end + 1) % ticks.length;
+            if (size < ticks.length) size++;
+            sum = 0;
+            count = 0;
+        }
+
+        List<Sample> getLatest(int amount) {
+            int pending = count > 0 ? 1 : 0;
+            int n = Math.min(amount - pending, size);
+            if (n < 0) n = 0;
+            List<Sample> samples = new ArrayList<>(n + pending);
+            for (int i = n; i > 0; i--) {
+                int index = Math.floorMod(end - i, ticks.length);
+                samples.add(new Sample(ticks[index], values[index]));
+            }
+            if (pending > 0 && amount > 0) samples.add(new Sample(bucket, sum / count));
+            return samples;
+        }
+    }
+
+    private final Ring[] rings;
+
+    PubSubHistory() {
+        Resolution[] resolutions = Resolution.values();
+        rings = new Ring[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) rings[i] = new Ring(resolutions[i]);
+    }
+
+    synchronized void record(int tick, double value) {
+        for (Ring ring : rings) ring.record(tick, value);
+    }
+
+    /**
+     * @param amount Maximum number of samples, the newest one may be the average of an unfinished bucket
+     * @return The latest samples at the given resolution, oldest first
+     */
+    public synchronized List<Sample> getLatest(Resolution resolution, int amount) {
+        return rings[resolution.ordinal()].getLatest(amount);
+    }
+}
@@ -1,5 +1,7 @@
 package quickcarpet.pubsub;
 
+import quickcarpet.helper.ParallelWorldTicker;
+
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
@@ -39,7 +41,9 @@ public class PubSubInfoProvider<T> implements Supplier<T>, PubSubCallback {
     }
 
     public PubSubInfoProvider<T> setPhase(int phase) {
+        node.unschedule(this);
         this.phase = phase;
+        node.schedule(this);
         return this;
     }
 
@@ -48,13 +52,35 @@ public class PubSubInfoProvider<T> implements Supplier<T>, PubSubCallback {
         return this;
     }
 
+    /**
+     * @see PubSubManager#enableHistory(PubSubNode)
+     */
+    public PubSubInfoProvider<T> enableHistory() {
+        node.enableHistory();
+        return this;
+    }
+
     @Override
     public boolean shouldUpdate(int tickCounter) {
         if (interval == 0) return false;
         return tickCounter % interval == phase;
     }
 
+    @Override
+    public int getInterval() {
+        return interval;
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
     public void publish() {
+        if (ParallelWorldTicker.isActive()) {
+            ParallelWorldTicker.defer(this::publish);
+            return;
+        }
         T newValue = this.get();
         if (publishAlways || !previous.isPresent() || !Objects.equals(previous.get(), newValue)) {
             this.node.publish(newValue);
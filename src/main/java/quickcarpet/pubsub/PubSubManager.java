@@ -1,18 +1,25 @@
 package quickcarpet.pubsub;
 
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
  * Central interface for PubSub interactions
+ * <p>
+ * Looking up, creating and publishing to nodes is lock-free and safe from any thread.
+ * Subscribing, unsubscribing, adding callbacks and updating must happen on the server thread,
+ * {@link PubSubMessenger} hands the requests of clients over to it.
  * @see quickcarpet.QuickCarpet#PUBSUB
  */
 public final class PubSubManager {
-    public final PubSubNode ROOT = new PubSubNode(null, "");
-    private final Map<String, PubSubNode> knownNodes = new TreeMap<>();
+    private final PubSubScheduler scheduler = new PubSubScheduler();
+    public final PubSubNode ROOT = new PubSubNode(scheduler);
+    private final Map<String, PubSubNode> knownNodes = new ConcurrentHashMap<>();
 
     /**
      * Get a node if it already exists.
@@ -24,9 +31,7 @@ public final class PubSubManager {
      */
     @Nullable
     public PubSubNode getNode(String name) {
-        synchronized (knownNodes) {
-            return knownNodes.get(name);
-        }
+        return knownNodes.get(name);
     }
 
     /**
@@ -38,23 +43,32 @@ public final class PubSubManager {
      * @see PubSubNode#getOrCreateChildNode(Collection)
      */
     public PubSubNode getOrCreateNode(String name) {
-        synchronized (knownNodes) {
-            return knownNodes.computeIfAbsent(name, name1 -> {
-                String[] path = name1.split("\\.");
-                return addKnownNode(ROOT.getOrCreateChildNode(path));
-            });
-        }
+        PubSubNode node = knownNodes.get(name);
+        if (node != null) return node;
+        // nodes are created atomically by their parent, so racing threads end up with the same node
+        return addKnownNode(ROOT.getOrCreateChildNode(name.split("\\.")));
     }
 
+    /**
+     * Registers a node and its parents for {@link #getNode(String)}, parents first,
+     * so a node is never visible while one of its parents is not
+     */
     public PubSubNode addKnownNode(PubSubNode node) {
-        synchronized (knownNodes) {
-            for (PubSubNode n = node; n != ROOT; n = n.parent) {
-                knownNodes.put(n.fullName, n);
-            }
-        }
+        if (knownNodes.containsKey(node.fullName)) return node;
+        Deque<PubSubNode> path = new ArrayDeque<>();
+        for (PubSubNode n = node; n != ROOT; n = n.parent) path.push(n);
+        for (PubSubNode n : path) knownNodes.putIfAbsent(n.fullName, n);
         return node;
     }
 
+    /**
+     * Keep a {@link PubSubHistory} of the numeric values of a node for clients to backfill.
+     * The callbacks of the node run even without subscribers from then on
+     */
+    public PubSubHistory enableHistory(PubSubNode node) {
+        return node.enableHistory();
+    }
+
     public void subscribe(PubSubNode node, PubSubSubscriber subscriber) {
         node.subscribe(subscriber);
     }
@@ -63,12 +77,41 @@ public final class PubSubManager {
         node.unsubscribe(subscriber);
     }
 
+    /**
+     * Publish a value to the subscribers of a node and its parents, safe to call from any thread.
+     * Players receive it with the next {@link PubSubMessenger#flush()}
+     */
     public void publish(PubSubNode node, Object value) {
         node.publish(value);
     }
 
+    /**
+     * @return Tick counter of the last {@link #update(int)}
+     */
+    public int getTick() {
+        return scheduler.getTick();
+    }
+
+    /**
+     * Update the subscribed nodes and nodes with a history whose interval is due in this tick
+     */
     public void update(int tickCounter) {
-        ROOT.update(tickCounter);
+        scheduler.update(tickCounter, false);
+    }
+
+    /**
+     * Update only the nodes with a history whose interval is due in this tick,
+     * so the history has no gaps while other updates are skipped during a turbo warp
+     */
+    public void updateHistory(int tickCounter) {
+        scheduler.update(tickCounter, true);
+    }
+
+    /**
+     * Update all nodes with subscribers regardless of their interval
+     */
+    public void updateAll() {
+        ROOT.updateAll();
     }
 
     public CallbackHandle addCallback(PubSubNode node, int interval, Consumer<PubSubNode> cb) {
@@ -78,6 +121,11 @@ public final class PubSubManager {
                 return (tickCounter % interval) == 0;
             }
 
+            @Override
+            public int getInterval() {
+                return interval;
+            }
+
             @Override
             public void update(PubSubNode node) {
                 cb.accept(node);
@@ -2,26 +2,58 @@ package quickcarpet.pubsub;
 
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.Tag;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.network.packet.c2s.play.CustomPayloadC2SPacket;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
 import quickcarpet.api.network.server.ServerPluginChannelHandler;
 import quickcarpet.network.impl.PacketSplitter;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
 
 public class PubSubMessenger implements ServerPluginChannelHandler {
     public static final Identifier CHANNEL_NAME = new Identifier("carpet:pubsub");
     // reserve id 0 for now
     public static final int PACKET_C2S_SUBSCRIBE = 1;
     public static final int PACKET_C2S_UNSUBSCRIBE = 2;
+    public static final int PACKET_C2S_PROTOCOL = 3;
+    /**
+     * Requests the latest values of nodes at one {@link PubSubHistory.Resolution}:
+     * {@code resolution : varint, amount : varint, size : varint, node : string[size]}
+     */
+    public static final int PACKET_C2S_BACKFILL = 4;
+    /**
+     * Limits of a single backfill request, further nodes are dropped and the amount is reduced to fit
+     */
+    public static final int BACKFILL_MAX_NODES = 64;
+    public static final int BACKFILL_MAX_SAMPLES = 8192;
+    /**
+     * Minimum time between backfill requests of a player, earlier requests are answered without nodes
+     */
+    public static final long BACKFILL_COOLDOWN_MS = 1000;
 
     public static final int PACKET_S2C_UPDATE = 1;
+    public static final int PACKET_S2C_PROTOCOL = 2;
+    public static final int PACKET_S2C_UPDATE_COMPACT = 3;
+    public static final int PACKET_S2C_BACKFILL = 4;
+
+    /**
+     * Node names and full values in every update, used until a client negotiates a newer version
+     */
+    public static final int PROTOCOL_LEGACY = 1;
+    /**
+     * Node ids assigned once per connection, delta encoded integers and unchanged values omitted
+     */
+    public static final int PROTOCOL_COMPACT = 2;
+    /**
+     * Backfill requests for nodes with a {@link PubSubHistory}
+     */
+    public static final int PROTOCOL_HISTORY = 3;
+    public static final int PROTOCOL_VERSION = PROTOCOL_HISTORY;
 
     public static final int TYPE_NBT = 0;
     public static final int TYPE_STRING = 1;
@@ -32,7 +64,28 @@ public class PubSubMessenger implements ServerPluginChannelHandler {
     public static final int TYPE_BOOLEAN = 6;
 
     private final PubSubManager pubSub;
+    /**
+     * Only accessed on the server thread, like the scheduler of {@link #pubSub}
+     */
     private final Map<ServerPlayerEntity, Map<PubSubNode, PubSubSubscriber>> subscriptions = new WeakHashMap<>();
+    /**
+     * Updates gathered since the last {@link #flush()}, only the last value of each node is kept.
+     * Values may be published from any thread, the map of a player is only modified inside
+     * {@link ConcurrentHashMap#compute} and owned by {@link #flush()} once removed.
+     */
+    private final Map<ServerPlayerEntity, Map<PubSubNode, Object>> pending = new ConcurrentHashMap<>();
+    /**
+     * Only accessed on the server thread
+     */
+    private final Map<ServerPlayerEntity, PubSubCodec.Encoder> compactEncoders = new HashMap<>();
+    /**
+     * Negotiated protocol versions, only accessed on the server thread
+     */
+    private final Map<ServerPlayerEntity, Integer> protocols = new HashMap<>();
+    /**
+     * Time of the last answered backfill request, only accessed on the server thread
+     */
+    private final Map<ServerPlayerEntity, Long> lastBackfill = new WeakHashMap<>();
 
     public PubSubMessenger(PubSubManager pubSub) {
         this.pubSub = pubSub;
@@ -43,7 +96,11 @@ public class PubSubMessenger implements ServerPluginChannelHandler {
         return new Identifier[]{CHANNEL_NAME};
     }
 
+    /**
+     * Must be called on the server thread
+     */
     public void subscribe(ServerPlayerEntity player, Collection<String> nodes) {
+        if (player.isDisconnected()) return;
         Map<PubSubNode, PubSubSubscriber> playerSubscriptions = subscriptions.computeIfAbsent(player, p -> new HashMap<>());
         Set<PubSubNode> addedNodes = new HashSet<>();
         for (String nodeName : nodes) {
@@ -63,25 +120,42 @@ public class PubSubMessenger implements ServerPluginChannelHandler {
             if (!alreadyAdded) deduplicatedNodes.add(node);
         }
         if (deduplicatedNodes.isEmpty()) return;
-        PubSubSubscriber subscriber = (node, value) -> {
-            PacketByteBuf packet = makeUpdatePacket(Collections.singletonMap(node, value));
-            PacketSplitter.send(player.networkHandler, CHANNEL_NAME, packet);
-        };
+        PubSubSubscriber subscriber = (node, value) -> pending.compute(player, (p, updates) -> {
+            if (updates == null) updates = new LinkedHashMap<>();
+            updates.put(node, value);
+            return updates;
+        });
         for (PubSubNode node : deduplicatedNodes) {
             playerSubscriptions.put(node, subscriber);
             pubSub.subscribe(node, subscriber);
         }
     }
 
+    /**
+     * Sends the updates gathered during this tick, one packet per player
+     */
+    public void flush() {
+        if (pending.isEmpty()) return;
+        for (ServerPlayerEntity player : pending.keySet()) {
+            Map<PubSubNode, Object> updates = pending.remove(player);
+            if (updates == null || player.isDisconnected()) continue;
+            PubSubCodec.Encoder encoder = compactEncoders.get(player);
+            PacketByteBuf buf = encoder != null ? encoder.encode(updates) : makeUpdatePacket(updates);
+            if (buf != null) PacketSplitter.send(player.networkHandler, CHANNEL_NAME, buf);
+        }
+    }
+
     private void unsubscribe(ServerPlayerEntity player, Collection<String> nodes) {
         Map<PubSubNode, PubSubSubscriber> playerSubscriptions = subscriptions.get(player);
         if (playerSubscriptions == null) return;
         for (String nodeName : nodes) {
             PubSubNode node = pubSub.getNode(nodeName);
             if (node == null) continue;
-            PubSubSubscriber subscriber = playerSubscriptions.get(node);
+            PubSubSubscriber subscriber = playerSubscriptions.remove(node);
             if (subscriber == null) continue;
             pubSub.unsubscribe(node, subscriber);
+            PubSubCodec.Encoder encoder = compactEncoders.get(player);
+            if (encoder != null) encoder.forget(node);
         }
     }
 
@@ -101,49 +175,74 @@ public class PubSubMessenger implements ServerPluginChannelHandler {
         for (Map.Entry<PubSubNode, Object> update : updates.entrySet()) {
             String nodeName = update.getKey().fullName;
             Object value = update.getValue();
+            int type = PubSubCodec.getType(nodeName, value);
             buf.writeString(nodeName);
-            if (value instanceof Tag) {
-                CompoundTag tag = makeCompound((Tag) value);
-                buf.writeVarInt(TYPE_NBT);
-                ByteBufOutputStream out = new ByteBufOutputStream(buf);
-                try {
-                    NbtIo.write(tag, out);
-                } catch (IOException ignored) {} // ByteBufOutputStream doesn't throw IOExceptions
-            } else if (value instanceof String) {
-                buf.writeVarInt(TYPE_STRING);
-                buf.writeString((String) value);
-            } else if (value instanceof Integer) {
-                buf.writeVarInt(TYPE_INT);
-                buf.writeInt((Integer) value);
-            } else if (value instanceof Float) {
-                buf.writeVarInt(TYPE_FLOAT);
-                buf.writeFloat((Float) value);
-            } else if (value instanceof Long) {
-                buf.writeVarInt(TYPE_LONG);
-                buf.writeLong((Long) value);
-            } else if (value instanceof Double) {
-                buf.writeVarInt(TYPE_DOUBLE);
-                buf.writeDouble((Double) value);
-            } else if (value instanceof Boolean) {
-                buf.writeVarInt(TYPE_BOOLEAN);
-                buf.writeBoolean((Boolean) value);
-            } else {
-                throw new IllegalArgumentException("Can't serialize " + nodeName + ": " + value.getClass().getSimpleName());
-            }
+            buf.writeVarInt(type);
+            PubSubCodec.writeValue(buf, type, value);
         }
         return buf;
     }
 
-    private static CompoundTag makeCompound(Tag tag) {
-        if (tag instanceof CompoundTag) return (CompoundTag) tag;
-        CompoundTag compound = new CompoundTag();
-        compound.put("", tag);
-        return compound;
+    /*
+        Packet format (framed by PacketSplitter):
+        id : varint = PACKET_S2C_BACKFILL
+        length : varint, uncompressed length of the deflated data
+        data : deflated {
+            resolution : varint
+            tick : varint, current server tick
+            size : varint {
+                node : string
+                samples : varint {
+                    age : varint = tick - sample tick
+                    value : double
+                }[samples]
+            }[size]
+        }
+        Nodes without a history are sent without samples.
+        Rate limited requests are answered without nodes to keep the responses in order.
+     */
+    private void sendBackfill(ServerPlayerEntity player, PubSubHistory.Resolution resolution, int amount, List<String> requested) {
+        if (player.isDisconnected()) return;
+        Collection<String> nodes = Collections.emptySet();
+        long now = Util.getMeasuringTimeMs();
+        Long last = lastBackfill.get(player);
+        if (last == null || now - last >= BACKFILL_COOLDOWN_MS) {
+            lastBackfill.put(player, now);
+            nodes = new LinkedHashSet<>();
+            for (String nodeName : requested) {
+                if (nodes.size() == BACKFILL_MAX_NODES) break;
+                nodes.add(nodeName);
+            }
+            if (!nodes.isEmpty()) amount = Math.min(amount, BACKFILL_MAX_SAMPLES / nodes.size());
+        }
+        int tick = pubSub.getTick();
+        PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
+        data.writeVarInt(resolution.ordinal());
+        data.writeVarInt(tick);
+        data.writeVarInt(nodes.size());
+        for (String nodeName : nodes) {
+            data.writeString(nodeName);
+            PubSubNode node = pubSub.getNode(nodeName);
+            PubSubHistory history = node == null ? null : node.getHistory();
+            List<PubSubHistory.Sample> samples = history == null ? Collections.emptyList() : history.getLatest(resolution, amount);
+            data.writeVarInt(samples.size());
+            for (PubSubHistory.Sample sample : samples) {
+                data.writeVarInt(tick - sample.tick);
+                data.writeDouble(sample.value);
+            }
+        }
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        buf.writeVarInt(PACKET_S2C_BACKFILL);
+        buf.writeVarInt(data.readableBytes());
+        try (DeflaterOutputStream out = new DeflaterOutputStream(new ByteBufOutputStream(buf))) {
+            data.readBytes(out, data.readableBytes());
+        } catch (IOException ignored) {} // ByteBufOutputStream doesn't throw IOExceptions
+        PacketSplitter.send(player.networkHandler, CHANNEL_NAME, buf);
     }
 
     private static List<String> readNames(PacketByteBuf buf) {
         int count = buf.readVarInt();
-        List<String> names = new ArrayList<>(count);
+        List<String> names = new ArrayList<>(Math.min(count, buf.readableBytes()));
         for (int i = 0; i < count; i++) {
             names.add(buf.readString(32767));
         }
@@ -157,23 +256,77 @@ public class PubSubMessenger implements ServerPluginChannelHandler {
         int id = payload.readVarInt();
         switch (id) {
             case PACKET_C2S_SUBSCRIBE: {
-                subscribe(player, readNames(payload));
+                List<String> nodes = readNames(payload);
+                onServerThread(player, () -> subscribe(player, nodes));
                 return;
             }
             case PACKET_C2S_UNSUBSCRIBE: {
-                unsubscribe(player, readNames(payload));
+                List<String> nodes = readNames(payload);
+                onServerThread(player, () -> unsubscribe(player, nodes));
+                return;
+            }
+            case PACKET_C2S_PROTOCOL: {
+                int version = payload.readVarInt();
+                onServerThread(player, () -> setProtocol(player, version));
+                return;
+            }
+            case PACKET_C2S_BACKFILL: {
+                PubSubHistory.Resolution[] resolutions = PubSubHistory.Resolution.values();
+                int resolution = payload.readVarInt();
+                if (resolution < 0 || resolution >= resolutions.length) throw new IllegalArgumentException("Unknown resolution " + resolution);
+                int amount = Math.min(payload.readVarInt(), resolutions[resolution].capacity);
+                List<String> nodes = readNames(payload);
+                onServerThread(player, () -> sendBackfill(player, resolutions[resolution], amount, nodes));
                 return;
             }
         }
         throw new IllegalArgumentException("Unknown packet id " + id + " for channel " + CHANNEL_NAME);
     }
 
+    /**
+     * Offers {@link #PROTOCOL_VERSION} to the client, older clients ignore the packet and keep receiving {@link #PACKET_S2C_UPDATE}
+     */
     @Override
-    public void unregister(Identifier channel, ServerPlayerEntity player) {
-        if (!subscriptions.containsKey(player)) return;
-        for (Map.Entry<PubSubNode, PubSubSubscriber> subscription : subscriptions.get(player).entrySet()) {
-            subscription.getKey().unsubscribe(subscription.getValue());
+    public boolean register(Identifier channel, ServerPlayerEntity player) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        buf.writeVarInt(PACKET_S2C_PROTOCOL);
+        buf.writeVarInt(PROTOCOL_VERSION);
+        PacketSplitter.send(player.networkHandler, CHANNEL_NAME, buf);
+        return true;
+    }
+
+    private void setProtocol(ServerPlayerEntity player, int version) {
+        if (player.isDisconnected()) return;
+        Integer previous = protocols.put(player, version);
+        // the client keeps its decoder as well, compact packets in flight still decode against it
+        if (previous != null && previous == version) return;
+        if (version >= PROTOCOL_COMPACT) {
+            compactEncoders.put(player, new PubSubCodec.Encoder());
+        } else {
+            compactEncoders.remove(player);
         }
-        subscriptions.remove(player);
+    }
+
+    /**
+     * Custom payloads are handled on the netty thread, subscriptions and the state used by {@link #flush()}
+     * are changed on the server thread while it is not updating or flushing
+     */
+    private static void onServerThread(ServerPlayerEntity player, Runnable task) {
+        player.server.execute(task);
+    }
+
+    @Override
+    public void unregister(Identifier channel, ServerPlayerEntity player) {
+        onServerThread(player, () -> {
+            compactEncoders.remove(player);
+            protocols.remove(player);
+            lastBackfill.remove(player);
+            Map<PubSubNode, PubSubSubscriber> playerSubscriptions = subscriptions.remove(player);
+            if (playerSubscriptions == null) return;
+            for (Map.Entry<PubSubNode, PubSubSubscriber> subscription : playerSubscriptions.entrySet()) {
+                subscription.getKey().unsubscribe(subscription.getValue());
+            }
+            pending.remove(player);
+        });
     }
 }
@@ -2,6 +2,8 @@ package quickcarpet.pubsub;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * A node in the PubSub tree
@@ -12,18 +14,36 @@ public final class PubSubNode {
     public final String fullName;
 
     public final @Nullable PubSubNode parent;
-    public final Map<String, PubSubNode> children = new HashMap<>();
-    private Set<PubSubSubscriber> subscribers = new LinkedHashSet<>();
-    private Set<PubSubCallback> callbacks = new LinkedHashSet<>();
+    public final Map<String, PubSubNode> children = new ConcurrentHashMap<>();
+    /**
+     * Copy-on-write, so {@link #publish(Object)} can iterate them from any thread without locking
+     */
+    private final Set<PubSubSubscriber> subscribers = new CopyOnWriteArraySet<>();
+    private final Set<PubSubCallback> callbacks = new CopyOnWriteArraySet<>();
+    private final PubSubScheduler scheduler;
 
     /**
         Keeps track of the number of subscribers in this branch of the tree (root -> subscriber)
         Used for only updating values if there are actually subscribers that would get them
+        Only changed on the server thread
      */
-    private int totalSubscriberCount = 0;
-    private Object lastValue;
+    private volatile int totalSubscriberCount = 0;
+    private volatile Object lastValue;
+    private volatile @Nullable PubSubHistory history;
 
-    PubSubNode(@Nullable PubSubNode parent, String name) {
+    /**
+     * Creates a root node
+     */
+    PubSubNode(PubSubScheduler scheduler) {
+        this(scheduler, null, "");
+    }
+
+    PubSubNode(PubSubNode parent, String name) {
+        this(parent.scheduler, parent, name);
+    }
+
+    private PubSubNode(PubSubScheduler scheduler, @Nullable PubSubNode parent, String name) {
+        this.scheduler = scheduler;
         this.parent = parent;
         this.name = name;
         this.fullName = parent != null && parent.fullName.length() > 0 ? parent.fullName + "." + name : name;
@@ -53,8 +73,7 @@ public final class PubSubNode {
         PubSubNode child = children.get(childName);
         if (child == null) {
             if (!create) return null;
-            child = new PubSubNode(this, childName);
-            children.put(childName, child);
+            child = children.computeIfAbsent(childName, n -> new PubSubNode(this, n));
         }
         return child.getChildNode(path, offset + 1, create);
     }
@@ -68,7 +87,7 @@ public final class PubSubNode {
     void subscribe(PubSubSubscriber subscriber) {
         this.subscribers.add(subscriber);
         for (PubSubNode n = this.parent; n != null; n = n.parent) {
-            n.totalSubscriberCount++;
+            n.changeSubscriberCount(1);
         }
         this.onSubscribe(subscriber);
     }
@@ -79,7 +98,7 @@ public final class PubSubNode {
      * @param subscriber The subscriber being added
      */
     private void onSubscribe(PubSubSubscriber subscriber) {
-        this.totalSubscriberCount++;
+        changeSubscriberCount(1);
         if (lastValue != null) subscriber.updateValue(this, lastValue);
         for (PubSubNode child : children.values()) {
             child.onSubscribe(subscriber);
@@ -94,7 +113,7 @@ public final class PubSubNode {
     void unsubscribe(PubSubSubscriber subscriber) {
         this.subscribers.remove(subscriber);
         for (PubSubNode n = this.parent; n != null; n = n.parent) {
-            n.totalSubscriberCount--;
+            n.changeSubscriberCount(-1);
         }
         this.onUnsubscribe(subscriber);
     }
@@ -105,12 +124,51 @@ public final class PubSubNode {
      * @param subscriber The subscriber being removed
      */
     private void onUnsubscribe(PubSubSubscriber subscriber) {
-        this.totalSubscriberCount--;
+        changeSubscriberCount(-1);
         for (PubSubNode child : children.values()) {
             child.onUnsubscribe(subscriber);
         }
     }
 
+    /**
+     * Registers the callbacks of this node with the {@link PubSubScheduler} when the branch gains
+     * its first subscriber and removes them when it loses the last one
+     */
+    private void changeSubscriberCount(int delta) {
+        boolean wasActive = isScheduled();
+        totalSubscriberCount += delta;
+        setScheduled(wasActive, isScheduled());
+    }
+
+    private void setScheduled(boolean wasActive, boolean active) {
+        if (active == wasActive) return;
+        for (PubSubCallback cb : callbacks) {
+            if (active) scheduler.add(this, cb);
+            else scheduler.remove(this, cb);
+        }
+    }
+
+    /**
+     * Nodes with a history keep updating without subscribers to fill it
+     */
+    private boolean isScheduled() {
+        return totalSubscriberCount > 0 || history != null;
+    }
+
+    PubSubHistory enableHistory() {
+        if (history == null) {
+            boolean wasActive = isScheduled();
+            history = new PubSubHistory();
+            setScheduled(wasActive, true);
+        }
+        return history;
+    }
+
+    @Nullable
+    public PubSubHistory getHistory() {
+        return history;
+    }
+
     /**
      * Publish new value
      * @param value New value for this node
@@ -118,6 +176,8 @@ public final class PubSubNode {
      */
     void publish(Object value) {
         lastValue = value;
+        PubSubHistory history = this.history;
+        if (history != null && value instanceof Number) history.record(scheduler.getTick(), ((Number) value).doubleValue());
         publish(this, value);
     }
 
@@ -134,22 +194,19 @@ public final class PubSubNode {
     }
 
     /**
-     * Instruct this node to update values from providers (called every tick).
-     * May already be suppressed by the parent if there are no subscribers.
-     * @param tickCounter Tick counter of the minecraft server
+     * Instruct this node and all children to update values from all providers
+     * @see PubSubScheduler#update(int)
      */
-    void update(int tickCounter) {
+    void updateAll() {
         if (totalSubscriberCount == 0) return;
-        for (PubSubCallback cb : this.callbacks) {
-            if (cb.shouldUpdate(tickCounter)) cb.update(this);
-        }
+        for (PubSubCallback cb : this.callbacks) cb.update(this);
         for (PubSubNode child : children.values()) {
-            child.update(tickCounter);
+            child.updateAll();
         }
     }
 
     PubSubManager.CallbackHandle addCallback(PubSubCallback callback) {
-        callbacks.add(callback);
+        if (callbacks.add(callback) && isScheduled()) scheduler.add(this, callback);
         return new PubSubManager.CallbackHandle() {
             @Override
             public boolean isActive() {
@@ -158,11 +215,27 @@ public final class PubSubNode {
 
             @Override
             public void remove() {
-                callbacks.remove(callback);
+                if (callbacks.remove(callback) && isScheduled()) scheduler.remove(PubSubNode.this, callback);
             }
         };
     }
 
+    /**
+     * Removes a callback from the scheduler before its interval or phase changes
+     * @see #schedule(PubSubCallback)
+     */
+    void unschedule(PubSubCallback callback) {
+        if (isScheduled() && callbacks.contains(callback)) scheduler.remove(this, callback);
+    }
+
+    /**
+     * Adds a callback to the scheduler again after its interval or phase changed
+     * @see #unschedule(PubSubCallback)
+     */
+    void schedule(PubSubCallback callback) {
+        if (isScheduled() && callbacks.contains(callback)) scheduler.add(this, callback);
+    }
+
     @Override
     public int hashCode() {
         return Objects.hashCode(this.parent) * 31 + this.name.hashCode();
@@ -0,0 +1,108 @@
+package quickcarpet.pubsub;
+
+import java.util.*;
+
+/**
+ * Bucketed scheduler for the callbacks of subscribed nodes.
+ * Callbacks with a fixed interval are kept in one wheel per interval with a slot per phase,
+ * so a tick only visits one slot per distinct interval and the callbacks that are due.
+ * Nodes add their callbacks when their branch gains its first subscriber and remove them when it loses the last one.
+ * Not thread-safe, it is only changed and updated on the server thread.
+ */
+final class PubSubScheduler {
+    private final Map<Integer, Wheel> wheels = new TreeMap<>();
+    private final Set<Task> polled = new LinkedHashSet<>();
+    private volatile int tick;
+
+    private static final class Task {
+        final PubSubNode node;
+        final PubSubCallback callback;
+
+        Task(PubSubNode node, PubSubCallback callback) {
+            this.node = node;
+            this.callback = callback;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(node) * 31 + callback.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Task)) return false;
+            Task task = (Task) obj;
+            return task.node == node && task.callback.equals(callback);
+        }
+    }
+
+    private static final class Wheel {
+        final Set<Task>[] slots;
+        int size;
+
+        @SuppressWarnings("unchecked")
+        Wheel(int interval) {
+            this.slots = new Set[interval];
+        }
+
+        Set<Task> getSlot(int phase, boolean create) {
+            Set<Task> slot = slots[phase];
+            if (slot == null && create) slots[phase] = slot = new LinkedHashSet<>();
+            return slot;
+        }
+    }
+
+    void add(PubSubNode node, PubSubCallback callback) {
+        int interval = callback.getInterval();
+        if (interval == 0) return;
+        Task task = new Task(node, callback);
+        if (interval < 0) {
+            polled.add(task);
+            return;
+        }
+        Wheel wheel = wheels.computeIfAbsent(interval, Wheel::new);
+        if (wheel.getSlot(Math.floorMod(callback.getPhase(), interval), true).add(task)) wheel.size++;
+    }
+
+    void remove(PubSubNode node, PubSubCallback callback) {
+        int interval = callback.getInterval();
+        if (interval == 0) return;
+        Task task = new Task(node, callback);
+        if (interval < 0) {
+            polled.remove(task);
+            return;
+        }
+        Wheel wheel = wheels.get(interval);
+        if (wheel == null) return;
+        Set<Task> slot = wheel.getSlot(Math.floorMod(callback.getPhase(), interval), false);
+        if (slot == null || !slot.remove(task)) return;
+        if (--wheel.size == 0) wheels.remove(interval);
+    }
+
+    /**
+     * @return Tick counter of the last {@link #update(int)}
+     */
+    int getTick() {
+        return tick;
+    }
+
+    /**
+     * Runs the callbacks that are due in this tick
+     * @param tickCounter Tick counter of the minecraft server
+     * @param historyOnly Only run the callbacks of nodes with a {@link PubSubHistory}
+     */
+    void update(int tickCounter, boolean historyOnly) {
+        tick = tickCounter;
+        for (Map.Entry<Integer, Wheel> e : wheels.entrySet()) {
+            Set<Task> slot = e.getValue().slots[Math.floorMod(tickCounter, e.getKey())];
+            if (slot == null) continue;
+            for (Task task : slot) {
+                if (!historyOnly || task.node.getHistory() != null) task.callback.update(task.node);
+            }
+        }
+        for (Task task : polled) {
+            if (historyOnly && task.node.getHistory() == null) continue;
+            if (task.callback.shouldUpdate(tickCounter)) task.callback.update(task.node);
+        }
+    }
+}
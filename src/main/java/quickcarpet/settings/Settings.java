@@ -16,6 +16,7 @@ import quickcarpet.api.annotation.BugFix;
 import quickcarpet.api.settings.*;
 import quickcarpet.feature.BreakBlockDispenserBehavior;
 import quickcarpet.feature.PlaceBlockDispenserBehavior;
+import quickcarpet.utils.CarpetProfiler;
 import quickcarpet.utils.Messenger;
 import quickcarpet.utils.Translations;
 
@@ -120,6 +121,16 @@ public class Settings {
     @Rule(category = COMMANDS, validator = Validator.OpLevel.class)
     public static int commandWaypoint = 0;
 
+    @Rule(category = FEATURE, onChange = ContinuousProfilingListener.class)
+    public static boolean continuousProfiling = false;
+
+    public static class ContinuousProfilingListener implements ChangeListener<Boolean> {
+        @Override
+        public void onChange(ParsedRule<Boolean> rule, Boolean previous) {
+            if (!continuousProfiling) CarpetProfiler.resetHistory();
+        }
+    }
+
     @Rule(category = CREATIVE)
     public static boolean creativeNoClip = false;
 
@@ -186,6 +197,9 @@ public class Settings {
         }
     }
 
+    @Rule(category = FEATURE, options = {"0", "2", "4", "10"}, validator = Validator.NonNegative.class)
+    public static double lagSpikeThreshold = 0;
+
     @Rule(category = {FEATURE, EXPERIMENTAL})
     public static boolean movableBlockEntities = false;
 
@@ -198,12 +212,18 @@ public class Settings {
     @Rule(category = FEATURE)
     public static boolean netherMaps = false;
 
+    @Rule(category = {FEATURE, EXPERIMENTAL})
+    public static boolean parallelDimensionTicking = false;
+
     @Rule(category = {SURVIVAL, FIX, EXPERIMENTAL})
     public static boolean phantomsRespectMobcap = false;
 
     @Rule(category = CREATIVE)
     public static boolean portalCreativeDelay = false;
 
+    @Rule(category = {FEATURE, EXPERIMENTAL})
+    public static boolean preciseTickPacing = false;
+
     @Rule(category = CREATIVE, options = {"10", "12", "14", "100"}, validator = Validator.NonNegative.class)
     public static int pushLimit = 12;
 
@@ -281,6 +301,9 @@ public class Settings {
     @Rule(category = {FEATURE, CREATIVE})
     public static boolean terracottaRepeaters = false;
 
+    @Rule(category = {FEATURE, EXPERIMENTAL})
+    public static boolean tickWarpTurbo = false;
+
     public static class TNTAngle implements Validator<Double> {
         @Override
         public Optional<TranslatableText> validate(Double value) {
@@ -1,47 +1,172 @@
 package quickcarpet.utils;
 
+import com.google.gson.JsonObject;
 import com.sun.management.GarbageCollectionNotificationInfo;
 import com.sun.management.GcInfo;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.objects.*;
+import net.minecraft.block.Block;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.BlockEntityType;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
+import net.minecraft.fluid.Fluid;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.function.CommandFunction;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.MutableText;
 import net.minecraft.util.Formatting;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Pair;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.Registry;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import quickcarpet.QuickCarpet;
 import quickcarpet.QuickCarpetServer;
 import quickcarpet.helper.TickSpeed;
 import quickcarpet.logging.Loggers;
 import quickcarpet.logging.loghelpers.LogParameter;
+import quickcarpet.logging.loghelpers.PacketCounter;
+import quickcarpet.pubsub.PubSubInfoProvider;
+import quickcarpet.pubsub.PubSubNode;
+import quickcarpet.settings.Settings;
+import quickcarpet.utils.profiler.AllocationCounter;
+import quickcarpet.utils.profiler.IdCounters;
+import quickcarpet.utils.profiler.LatencyHistogram;
+import quickcarpet.utils.profiler.LoadAverage;
+import quickcarpet.utils.profiler.SectionHistory;
+import quickcarpet.utils.profiler.TraceRecorder;
 
 import javax.annotation.Nullable;
 import javax.management.Notification;
 import javax.management.NotificationEmitter;
 import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 import static quickcarpet.utils.Messenger.*;
 
 public class CarpetProfiler
 {
+    private static final Logger LOGGER = LogManager.getLogger();
     private static final Map<RegistryKey<World>, Measurement> MEASUREMENTS = new HashMap<>();
+    /**
+     * Measurement slot of the world currently being ticked, resolved once per world instead of once per event
+     */
+    private static World lastMeasurementWorld;
+    private static Measurement lastMeasurement;
     private static int ticksTotal = 0;
     private static int ticksRemaining = 0;
     private static ReportType reportType = null;
     private static long currentTickStart = 0;
     private static long totalTickTime;
     private static boolean inTick;
+    private static boolean recordPositions;
+    private static long currentTickAllocated;
+    private static long totalTickAllocated;
+    private static long serverThreadId = -1;
+    /**
+     * Set while dimensions tick on their own threads, the lookup caches are bypassed in the meantime
+     */
+    private static volatile boolean parallelWorlds;
+    private static long parallelSerialTime;
+    private static long parallelWallTime;
+    private static long lastGCAllocated;
+    /**
+     * Published from the notification thread of the garbage collector
+     */
+    private static final PubSubNode GC_DURATION_NODE = QuickCarpet.PUBSUB.getOrCreateNode("minecraft.performance.gc.duration");
+    private static final WorldSavePath TRACES = new WorldSavePath("traces");
+    private static TraceRecorder trace;
+    private static PacketCounter.Window networkStart;
+    /**
+     * Function of each element seen in a {@link ReportType#COMMANDS} report
+     */
+    private static final Map<CommandFunction.Element, Identifier> FUNCTION_ELEMENTS = new WeakHashMap<>();
+    private static final LatencyHistogram benchmarkTicks = new LatencyHistogram();
+    private static Consumer<JsonObject> benchmarkCallback;
+    /**
+     * Chunks lit, incremented from the world generation workers
+     */
+    private static final LongAdder LIT_CHUNKS = new LongAdder();
+    private static long litChunksStart;
+    private static final int TOP_CHUNKS = 10;
+
+    public static final int HISTORY_MINUTES = 15;
+    private static final int HISTORY_TICKS = HISTORY_MINUTES * 60 * 20;
+    private static final int TICK_COLUMN = SectionType.GLOBAL.length;
+    private static final Map<RegistryKey<World>, History> HISTORY = new HashMap<>();
+    private static History globalHistory;
+    private static final LoadAverage[] SECTION_LOAD = new LoadAverage[SectionType.values().length];
+
+    private static World lastHistoryWorld;
+    private static History lastHistory;
+
+    static {
+        for (SectionType section : SectionType.values()) {
+            LoadAverage load = SECTION_LOAD[section.ordinal()] = new LoadAverage();
+            for (int i = 0; i < LoadAverage.HORIZONS.length; i++) {
+                int horizon = i;
+                String node = "minecraft.performance.load." + section.name().toLowerCase(Locale.ROOT) + "." + LoadAverage.HORIZONS[i] + "m";
+                new PubSubInfoProvider<>(QuickCarpet.PUBSUB, node, 20, () -> load.get(horizon));
+            }
+        }
+    }
+
+    private static final int SPIKE_FRAMES = 5;
+    private static final int MAX_SPIKES = 16;
+    private static final Frame[] spikeFrames = new Frame[SPIKE_FRAMES];
+    private static final Deque<LagSpike> SPIKES = new ArrayDeque<>();
+    private static int spikeFrameIndex;
+    private static Frame spikeFrame;
+    private static int lastSpikeId;
 
     public enum ReportType {
-        HEALTH, ENTITIES
+        HEALTH(true, false),
+        ENTITIES(false, true),
+        CHUNKS(false, false),
+        ALLOCATIONS(true, true),
+        TRACE(false, false),
+        SCHEDULED_TICKS(false, false),
+        RANDOM_TICKS(false, false),
+        NETWORK(false, false),
+        CHUNK_IO(false, false),
+        UPDATES(false, false),
+        COMMANDS(false, false),
+        BENCHMARK(true, true);
+
+        final boolean sections;
+        final boolean entities;
+
+        ReportType(boolean sections, boolean entities) {
+            this.sections = sections;
+            this.entities = entities;
+        }
     }
 
     public enum SectionType {
@@ -49,6 +174,7 @@ public class CarpetProfiler
         NETWORK(true, false),
         AUTOSAVE(true, true),
         GC(true, true),
+        COMMANDS(true, false),
         SPAWNING(false, false),
         BLOCKS(false, false),
         FLUIDS(false, false),
@@ -57,14 +183,25 @@ public class CarpetProfiler
         ENTITIES(false, false),
         BLOCK_ENTITIES(false, false),
         VILLAGES(false, false),
-        PORTALS(false, false);
+        PORTALS(false, false),
+        CHUNK_UNLOAD(false, false);
 
         public static final SectionType[] GLOBAL = Arrays.stream(values()).filter(s -> s.global).toArray(SectionType[]::new);
         public static final SectionType[] PER_DIMENSION = Arrays.stream(values()).filter(s -> !s.global).toArray(SectionType[]::new);
 
+        static {
+            for (int i = 0; i < GLOBAL.length; i++) GLOBAL[i].column = i;
+            for (int i = 0; i < PER_DIMENSION.length; i++) PER_DIMENSION[i].column = i;
+        }
+
         private final boolean global;
         private final boolean customFormat;
         private final String translationKey = "carpet.profiler.section." + this.name().toLowerCase(Locale.ROOT);
+        /**
+         * Index in {@link #GLOBAL} or {@link #PER_DIMENSION}
+         */
+        private int column;
+
         SectionType(boolean global, boolean custom) {
             this.global = global;
             this.customFormat = custom;
@@ -88,140 +225,860 @@ public class CarpetProfiler
         }
     }
 
+    /**
+     * Chunk work on the server thread, timed independently of the current section as it can happen in any of them
+     */
+    public enum ChunkActivity {
+        LOAD, SAVE, TASKS, WAIT;
+
+        private final String translationKey = "carpet.profiler.chunk_io." + this.name().toLowerCase(Locale.ROOT);
+
+        public MutableText getName() {
+            return t(translationKey);
+        }
+    }
+
+    /**
+     * Sources of command execution, timed independently of the current section as they can run in any of them
+     */
+    public enum CommandType {
+        FUNCTION, COMMAND_BLOCK, SCHEDULE, LOG_HANDLER;
+
+        private final String translationKey = "carpet.profiler.commands." + this.name().toLowerCase(Locale.ROOT);
+
+        public MutableText getName() {
+            return t(translationKey);
+        }
+    }
+
+    private static class CommandStats {
+        final Object2LongOpenHashMap<Object> times = new Object2LongOpenHashMap<>();
+        final Object2IntOpenHashMap<Object> counts = new Object2IntOpenHashMap<>();
+        long total;
+        int count;
+    }
+
     private static class Measurement {
         final @Nullable RegistryKey<World> dimension;
-        final Object2LongMap<SectionType> sections;
-        final Object2IntMap<SectionType> sectionCount;
-        final Object2LongMap<EntityType> entityTimes = new Object2LongOpenHashMap<>();
-        final Object2LongMap<EntityType> entityCount = new Object2LongOpenHashMap<>();
-        final Object2LongMap<BlockEntityType> blockEntityTimes = new Object2LongOpenHashMap<>();
-        final Object2LongMap<BlockEntityType> blockEntityCount = new Object2LongOpenHashMap<>();
+        final long[] sections;
+        final int[] sectionCount;
+        final IdCounters entityTimes = new IdCounters(Registry.ENTITY_TYPE.getIds().size());
+        final IdCounters entityCount = new IdCounters(Registry.ENTITY_TYPE.getIds().size());
+        final IdCounters blockEntityTimes = new IdCounters(Registry.BLOCK_ENTITY_TYPE.getIds().size());
+        final IdCounters blockEntityCount = new IdCounters(Registry.BLOCK_ENTITY_TYPE.getIds().size());
 
         private SectionType currentSection;
         private long currentSectionStart;
 
-        private EntityType currentEntity;
+        private int currentEntity;
         private long currentEntityStart;
 
-        private BlockEntityType currentBlockEntity;
+        private int currentBlockEntity;
         private long currentBlockEntityStart;
 
+        final boolean allocations;
+        final long[] sectionAllocations;
+        final IdCounters entityAllocations = new IdCounters(Registry.ENTITY_TYPE.getIds().size());
+        final IdCounters blockEntityAllocations = new IdCounters(Registry.BLOCK_ENTITY_TYPE.getIds().size());
+        private long currentSectionAllocated;
+        private long currentEntityAllocated;
+        private long currentBlockEntityAllocated;
+
+        final IdCounters blockTickTimes = new IdCounters(Registry.BLOCK.getIds().size());
+        final IdCounters blockTickCount = new IdCounters(Registry.BLOCK.getIds().size());
+        final IdCounters fluidTickTimes = new IdCounters(Registry.FLUID.getIds().size());
+        final IdCounters fluidTickCount = new IdCounters(Registry.FLUID.getIds().size());
+        final TickQueue blockTickQueue = new TickQueue();
+        final TickQueue fluidTickQueue = new TickQueue();
+        private int currentScheduledTick;
+        private boolean currentScheduledFluid;
+        private long currentScheduledTickStart;
+
+        final IdCounters randomTickTimes = new IdCounters(Registry.BLOCK.getIds().size());
+        final IdCounters randomTickCount = new IdCounters(Registry.BLOCK.getIds().size());
+        final IdCounters fluidRandomTickTimes = new IdCounters(Registry.FLUID.getIds().size());
+        final IdCounters fluidRandomTickCount = new IdCounters(Registry.FLUID.getIds().size());
+        long weatherTime;
+        int randomTickChunks;
+        private int currentRandomTick;
+        private boolean currentRandomFluid;
+        private long currentRandomTickStart;
+        private long currentWeatherStart;
+
+        final long[] chunkActivityTimes = new long[ChunkActivity.values().length];
+        final int[] chunkActivityCount = new int[ChunkActivity.values().length];
+        private final long[] chunkActivityStart = new long[ChunkActivity.values().length];
+        private final int[] chunkActivityDepth = new int[ChunkActivity.values().length];
+        final TickQueue chunkTaskQueue = new TickQueue();
+        final TickQueue workerQueue = new TickQueue();
+
+        /**
+         * Update counts keyed by {@link #updatePair(Block, Block)}
+         */
+        final Long2IntOpenHashMap neighborUpdates = new Long2IntOpenHashMap();
+        final Long2IntOpenHashMap shapeUpdates = new Long2IntOpenHashMap();
+        final Long2IntOpenHashMap updateSources = new Long2IntOpenHashMap();
+        long neighborUpdateCount;
+        long shapeUpdateCount;
+
+        final CommandStats[] commandStats = new CommandStats[CommandType.values().length];
+        private CommandType[] commandTypes = new CommandType[8];
+        private Object[] commandKeys = new Object[8];
+        private long[] commandStarts = new long[8];
+        private int commandDepth;
+
+        /**
+         * Entities and block entities that were ticked or skipped because they are frozen,
+         * entities in frozen areas are counted in both
+         */
+        long tickedEntities;
+        long tickedBlockEntities;
+        long frozenEntities;
+        long frozenAreaEntities;
+        long frozenBlockEntities;
+        long frozenScheduledTicks;
+
+        final Long2LongOpenHashMap chunkTimes = new Long2LongOpenHashMap();
+        final Long2IntOpenHashMap chunkCounts = new Long2IntOpenHashMap();
+        final Long2LongOpenHashMap positionTimes = new Long2LongOpenHashMap();
+        private long currentPosition;
+        private long currentPositionStart;
+
         Measurement(@Nullable RegistryKey<World> dimension) {
+            this(dimension, false);
+        }
+
+        Measurement(@Nullable RegistryKey<World> dimension, boolean allocations) {
             this.dimension = dimension;
-            if (dimension == null) {
-                this.sections = new Object2LongArrayMap<>(SectionType.GLOBAL, new long[SectionType.GLOBAL.length]);
-                this.sectionCount = new Object2IntArrayMap<>(SectionType.GLOBAL, new int[SectionType.GLOBAL.length]);
-            } else {
-                this.sections = new Object2LongArrayMap<>(SectionType.PER_DIMENSION, new long[SectionType.PER_DIMENSION.length]);
-                this.sectionCount = new Object2IntArrayMap<>(SectionType.PER_DIMENSION, new int[SectionType.PER_DIMENSION.length]);
-            }
+            this.allocations = allocations;
+            int sectionTypes = dimension == null ? SectionType.GLOBAL.length : SectionType.PER_DIMENSION.length;
+            this.sections = new long[sectionTypes];
+            this.sectionCount = new int[sectionTypes];
+            this.sectionAllocations = new long[sectionTypes];
+            for (int i = 0; i < commandStats.length; i++) commandStats[i] = new CommandStats();
         }
 
         void startSection(SectionType type) {
             this.currentSection = type;
+            if (allocations) this.currentSectionAllocated = AllocationCounter.getAllocatedBytes();
             this.currentSectionStart = System.nanoTime();
         }
 
         void endSection() {
             if (currentSectionStart == 0) throw new IllegalStateException("Section not started");
-            sections.put(currentSection, sections.getLong(currentSection) + System.nanoTime() - currentSectionStart);
-            sectionCount.put(currentSection, sectionCount.getInt(currentSection) + 1);
+            int column = currentSection.column;
+            sections[column] += System.nanoTime() - currentSectionStart;
+            sectionCount[column]++;
+            if (allocations) sectionAllocations[column] += AllocationCounter.getAllocatedBytes() - currentSectionAllocated;
             currentSectionStart = 0;
         }
 
-        void startEntity(EntityType type) {
-            this.currentEntity = type;
+        void startEntity(EntityType<?> type) {
+            this.currentEntity = Registry.ENTITY_TYPE.getRawId(type);
+            if (allocations) this.currentEntityAllocated = AllocationCounter.getAllocatedBytes();
             this.currentEntityStart = System.nanoTime();
         }
 
         void endEntity() {
-            long previousTime = entityTimes.getOrDefault(currentEntity, 0);
-            entityTimes.put(currentEntity, previousTime + System.nanoTime() - currentEntityStart);
-            entityCount.put(currentEntity, entityCount.getOrDefault(currentEntity, 0) + 1);
+            entityTimes.add(currentEntity, System.nanoTime() - currentEntityStart);
+            entityCount.add(currentEntity, 1);
+            if (allocations) entityAllocations.add(currentEntity, AllocationCounter.getAllocatedBytes() - currentEntityAllocated);
         }
 
-        void startBlockEntity(BlockEntityType type) {
-            this.currentBlockEntity = type;
+        void startBlockEntity(BlockEntityType<?> type) {
+            this.currentBlockEntity = Registry.BLOCK_ENTITY_TYPE.getRawId(type);
+            if (allocations) this.currentBlockEntityAllocated = AllocationCounter.getAllocatedBytes();
             this.currentBlockEntityStart = System.nanoTime();
         }
 
         void endBlockEntity() {
-            long previousTime = blockEntityTimes.getOrDefault(currentBlockEntity, 0);
-            blockEntityTimes.put(currentBlockEntity, previousTime + System.nanoTime() - currentBlockEntityStart);
-            blockEntityCount.put(currentBlockEntity, blockEntityCount.getOrDefault(currentBlockEntity, 0) + 1);
+            blockEntityTimes.add(currentBlockEntity, System.nanoTime() - currentBlockEntityStart);
+            blockEntityCount.add(currentBlockEntity, 1);
+            if (allocations) blockEntityAllocations.add(currentBlockEntity, AllocationCounter.getAllocatedBytes() - currentBlockEntityAllocated);
+        }
+
+        void startScheduledTick(Block block) {
+            this.currentScheduledTick = Registry.BLOCK.getRawId(block);
+            this.currentScheduledFluid = false;
+            this.currentScheduledTickStart = System.nanoTime();
+        }
+
+        void startScheduledTick(Fluid fluid) {
+            this.currentScheduledTick = Registry.FLUID.getRawId(fluid);
+            this.currentScheduledFluid = true;
+            this.currentScheduledTickStart = System.nanoTime();
+        }
+
+        void endScheduledTick() {
+            long time = System.nanoTime() - currentScheduledTickStart;
+            (currentScheduledFluid ? fluidTickTimes : blockTickTimes).add(currentScheduledTick, time);
+            (currentScheduledFluid ? fluidTickCount : blockTickCount).add(currentScheduledTick, 1);
+        }
+
+        void startRandomTick(Block block) {
+            this.currentRandomTick = Registry.BLOCK.getRawId(block);
+            this.currentRandomFluid = false;
+            this.currentRandomTickStart = System.nanoTime();
+        }
+
+        void startRandomTick(Fluid fluid) {
+            this.currentRandomTick = Registry.FLUID.getRawId(fluid);
+            this.currentRandomFluid = true;
+            this.currentRandomTickStart = System.nanoTime();
+        }
+
+        void endRandomTick() {
+            long time = System.nanoTime() - currentRandomTickStart;
+            (currentRandomFluid ? fluidRandomTickTimes : randomTickTimes).add(currentRandomTick, time);
+            (currentRandomFluid ? fluidRandomTickCount : randomTickCount).add(currentRandomTick, 1);
+        }
+
+        void startWeather() {
+            this.randomTickChunks++;
+            this.currentWeatherStart = System.nanoTime();
+        }
+
+        void endWeather() {
+            if (currentWeatherStart == 0) return;
+            weatherTime += System.nanoTime() - currentWeatherStart;
+            currentWeatherStart = 0;
+        }
+
+        void startChunkActivity(ChunkActivity activity) {
+            int i = activity.ordinal();
+            if (chunkActivityDepth[i]++ == 0) chunkActivityStart[i] = System.nanoTime();
+        }
+
+        void endChunkActivity(ChunkActivity activity) {
+            int i = activity.ordinal();
+            if (chunkActivityDepth[i] == 0 || --chunkActivityDepth[i] > 0) return;
+            chunkActivityTimes[i] += System.nanoTime() - chunkActivityStart[i];
+            chunkActivityCount[i]++;
+        }
+
+        void startCommand(CommandType type, Object key) {
+            if (commandDepth == commandStarts.length) {
+                commandTypes = Arrays.copyOf(commandTypes, commandDepth * 2);
+                commandKeys = Arrays.copyOf(commandKeys, commandDepth * 2);
+                commandStarts = Arrays.copyOf(commandStarts, commandDepth * 2);
+            }
+            commandTypes[commandDepth] = type;
+            commandKeys[commandDepth] = key;
+            commandStarts[commandDepth] = System.nanoTime();
+            commandDepth++;
+        }
+
+        /**
+         * Time of nested commands is included in the key of the outer one,
+         * but only counted once towards the total of each type
+         */
+        void endCommand() {
+            if (commandDepth == 0) return;
+            int i = --commandDepth;
+            long time = System.nanoTime() - commandStarts[i];
+            CommandType type = commandTypes[i];
+            Object key = commandKeys[i];
+            commandKeys[i] = null;
+            CommandStats stats = commandStats[type.ordinal()];
+            stats.times.addTo(key, time);
+            // functions are timed per element and counted per call
+            if (type != CommandType.FUNCTION) countCommand(type, key);
+            for (int j = i - 1; j >= 0; j--) {
+                if (commandTypes[j] == type) return;
+            }
+            stats.total += time;
+        }
+
+        void countCommand(CommandType type, Object key) {
+            CommandStats stats = commandStats[type.ordinal()];
+            stats.counts.addTo(key, 1);
+            stats.count++;
+        }
+
+        static long updatePair(Block source, Block target) {
+            return (long) Registry.BLOCK.getRawId(source) << 32 | Registry.BLOCK.getRawId(target);
+        }
+
+        void update(boolean shape, BlockPos sourcePos, Block source, Block target) {
+            if (shape) {
+                shapeUpdates.addTo(updatePair(source, target), 1);
+                shapeUpdateCount++;
+            } else {
+                neighborUpdates.addTo(updatePair(source, target), 1);
+                neighborUpdateCount++;
+            }
+            updateSources.addTo(sourcePos.asLong(), 1);
+        }
+
+        void startPosition(BlockPos pos) {
+            this.currentPosition = pos.asLong();
+            this.currentPositionStart = System.nanoTime();
+        }
+
+        void endPosition(boolean exact) {
+            long time = System.nanoTime() - currentPositionStart;
+            long chunk = ChunkPos.toLong(BlockPos.unpackLongX(currentPosition) >> 4, BlockPos.unpackLongZ(currentPosition) >> 4);
+            chunkTimes.addTo(chunk, time);
+            chunkCounts.addTo(chunk, 1);
+            if (exact) positionTimes.addTo(currentPosition, time);
         }
 
         void gc(long ms) {
             long ns = ms * 1_000_000;
             if (dimension == null) {
-                sections.put(SectionType.GC, sections.getLong(SectionType.GC) + ns);
-                sectionCount.put(SectionType.GC, sectionCount.getInt(SectionType.GC) + 1);
+                sections[SectionType.GC.column] += ns;
+                sectionCount[SectionType.GC.column]++;
             }
             currentSectionStart += ns;
             currentBlockEntityStart += ns;
             currentEntityStart += ns;
+            currentPositionStart += ns;
+            currentScheduledTickStart += ns;
+            currentRandomTickStart += ns;
+            if (currentWeatherStart != 0) currentWeatherStart += ns;
+            for (int i = 0; i < chunkActivityStart.length; i++) {
+                if (chunkActivityDepth[i] > 0) chunkActivityStart[i] += ns;
+            }
+            for (int i = 0; i < commandDepth; i++) commandStarts[i] += ns;
+        }
+
+        void reset() {
+            Arrays.fill(sections, 0);
+            Arrays.fill(sectionCount, 0);
+            Arrays.fill(sectionAllocations, 0);
+            entityAllocations.clear();
+            blockEntityAllocations.clear();
+            entityTimes.clear();
+            entityCount.clear();
+            blockEntityTimes.clear();
+            blockEntityCount.clear();
+            blockTickTimes.clear();
+            blockTickCount.clear();
+            fluidTickTimes.clear();
+            fluidTickCount.clear();
+            blockTickQueue.reset();
+            fluidTickQueue.reset();
+            randomTickTimes.clear();
+            randomTickCount.clear();
+            fluidRandomTickTimes.clear();
+            fluidRandomTickCount.clear();
+            weatherTime = 0;
+            randomTickChunks = 0;
+            Arrays.fill(chunkActivityTimes, 0);
+            Arrays.fill(chunkActivityCount, 0);
+            Arrays.fill(chunkActivityDepth, 0);
+            chunkTaskQueue.reset();
+            workerQueue.reset();
+            neighborUpdates.clear();
+            shapeUpdates.clear();
+            updateSources.clear();
+            neighborUpdateCount = 0;
+            shapeUpdateCount = 0;
+            chunkTimes.clear();
+            chunkCounts.clear();
+            positionTimes.clear();
+            currentSectionStart = 0;
+        }
+    }
+
+    /**
+     * Size of a scheduled tick queue sampled once per tick
+     */
+    private static class TickQueue {
+        int first = -1;
+        int last;
+        int max;
+        long total;
+        int samples;
+
+        void sample(int size) {
+            if (first < 0) first = size;
+            last = size;
+            if (size > max) max = size;
+            total += size;
+            samples++;
+        }
+
+        void reset() {
+            first = -1;
+            last = max = samples = 0;
+            total = 0;
+        }
+    }
+
+    /**
+     * Detailed measurements of a single tick, kept in a ring of {@value #SPIKE_FRAMES} for {@link Settings#lagSpikeThreshold}
+     */
+    private static class Frame {
+        final Map<RegistryKey<World>, Measurement> measurements = new HashMap<>();
+        /**
+         * Measurements written since the last {@link #reset()}, only these need to be cleared
+         */
+        private final List<Measurement> written = new ArrayList<>();
+        int tick;
+        long tickTime;
+        private World lastWorld;
+        private Measurement last;
+
+        Measurement get(World world) {
+            if (parallelWorlds) return measurements.get(world == null ? null : world.getRegistryKey());
+            if (world == lastWorld && last != null) return last;
+            last = measurements.computeIfAbsent(world == null ? null : world.getRegistryKey(), Measurement::new);
+            lastWorld = world;
+            if (!written.contains(last)) written.add(last);
+            return last;
+        }
+
+        void reset() {
+            tickTime = 0;
+            for (Measurement m : written) m.reset();
+            written.clear();
+            lastWorld = null;
+            last = null;
+        }
+    }
+
+    public static class LagSpike {
+        public final int id;
+        public final int tick;
+        public final long timestamp;
+        public final long tickTime;
+        private final List<MutableText> report;
+
+        private LagSpike(int id, int tick, long tickTime, List<MutableText> report) {
+            this.id = id;
+            this.tick = tick;
+            this.timestamp = System.currentTimeMillis();
+            this.tickTime = tickTime;
+            this.report = report;
+        }
+
+        public List<MutableText> getReport() {
+            return Collections.unmodifiableList(report);
+        }
+
+        public MutableText format() {
+            float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+            double ms = tickTime / 1e6;
+            return runCommand(t("carpet.profiler.spike.line", id, tick,
+                formats("%.1f", getHeatmapColor(ms, msptGoal), ms),
+                formats("%.1f", Formatting.GRAY, ms / msptGoal)
+            ), "/tick spikes " + id, t("carpet.profiler.spike.show"));
+        }
+    }
+
+    /**
+     * Continuous per-tick section timings of one dimension (or the global sections), see {@link Settings#continuousProfiling}
+     */
+    private static class History {
+        final @Nullable RegistryKey<World> dimension;
+        final SectionHistory sections;
+
+        private SectionType currentSection;
+        private long currentSectionStart;
+
+        History(@Nullable RegistryKey<World> dimension) {
+            this.dimension = dimension;
+            int columns = dimension == null ? SectionType.GLOBAL.length + 1 : SectionType.PER_DIMENSION.length;
+            this.sections = new SectionHistory(columns, HISTORY_TICKS);
+        }
+
+        void startSection(SectionType type) {
+            this.currentSection = type;
+            this.currentSectionStart = System.nanoTime();
+        }
+
+        void endSection() {
+            if (currentSectionStart == 0) return;
+            sections.add(currentSection.column, System.nanoTime() - currentSectionStart);
+            currentSectionStart = 0;
+        }
+
+        void gc(long ms) {
+            long ns = ms * 1_000_000;
+            if (dimension == null) sections.add(SectionType.GC.column, ns);
+            if (currentSectionStart != 0) currentSectionStart += ns;
         }
     }
 
-    public static void startTickReport(MinecraftServer server, ReportType type, int ticks) {
+    public static boolean startTickReport(MinecraftServer server, ReportType type, int ticks) {
+        return startTickReport(server, type, ticks, false);
+    }
+
+    /**
+     * @param positions Whether {@link ReportType#CHUNKS} should also attribute time to the exact block positions,
+     *                  or {@link ReportType#SCHEDULED_TICKS} to chunks
+     * @return Whether the report was started, a running report is never replaced
+     */
+    public static boolean startTickReport(MinecraftServer server, ReportType type, int ticks, boolean positions) {
+        if (isActive()) return false;
         //maybe add so it only spams the sending player, but honestly - all may want to see it
         totalTickTime = 0;
         reportType = type;
-        MEASUREMENTS.put(null, new Measurement(null));
+        recordPositions = positions;
+        trace = type == ReportType.TRACE ? new TraceRecorder(TraceRecorder.DEFAULT_CAPACITY) : null;
+        lastMeasurementWorld = null;
+        lastMeasurement = null;
+        networkStart = type == ReportType.NETWORK ? new PacketCounter.Window() : null;
+        litChunksStart = LIT_CHUNKS.sum();
+        totalTickAllocated = 0;
+        parallelSerialTime = 0;
+        parallelWallTime = 0;
+        benchmarkTicks.reset();
+        boolean allocations = recordsAllocations();
+        MEASUREMENTS.put(null, new Measurement(null, allocations));
         for (ServerWorld world : server.getWorlds()) {
-            MEASUREMENTS.put(world.getRegistryKey(), new Measurement(world.getRegistryKey()));
+            MEASUREMENTS.put(world.getRegistryKey(), new Measurement(world.getRegistryKey(), allocations));
         }
 
         ticksRemaining = ticks;
         ticksTotal = ticks;
         currentTickStart = 0L;
-
+        return true;
     }
 
     private static Measurement getMeasurement(World world) {
-        if (world == null) return MEASUREMENTS.get(null);
-        return MEASUREMENTS.get(world.getRegistryKey());
+        if (parallelWorlds) return MEASUREMENTS.get(world == null ? null : world.getRegistryKey());
+        if (world == lastMeasurementWorld && lastMeasurement != null) return lastMeasurement;
+        Measurement measurement = MEASUREMENTS.get(world == null ? null : world.getRegistryKey());
+        lastMeasurementWorld = world;
+        lastMeasurement = measurement;
+        return measurement;
+    }
+
+    private static History getHistory(World world) {
+        if (world == null) {
+            if (globalHistory == null) globalHistory = new History(null);
+            return globalHistory;
+        }
+        if (parallelWorlds) return HISTORY.get(world.getRegistryKey());
+        if (world == lastHistoryWorld) return lastHistory;
+        History history = HISTORY.computeIfAbsent(world.getRegistryKey(), History::new);
+        lastHistoryWorld = world;
+        lastHistory = history;
+        return history;
+    }
+
+    public static void resetHistory() {
+        for (LoadAverage load : SECTION_LOAD) load.reset();
+        HISTORY.clear();
+        globalHistory = null;
+        lastHistoryWorld = null;
+        lastHistory = null;
+    }
+
+    private static void traceBegin(World world, Object name) {
+        if (trace == null || currentTickStart == 0) return;
+        trace.begin(world == null ? null : world.getRegistryKey(), name);
+    }
+
+    private static void traceEnd(World world) {
+        if (trace == null || currentTickStart == 0) return;
+        trace.end(world == null ? null : world.getRegistryKey());
     }
 
     public static void startSection(World world, SectionType section) {
-        if (!isActive(ReportType.HEALTH)) return;
+        traceBegin(world, section);
+        if (Settings.continuousProfiling) getHistory(world).startSection(section);
+        if (spikeFrame != null) spikeFrame.get(world).startSection(section);
+        if (reportType == null || !reportType.sections) return;
         getMeasurement(world).startSection(section);
     }
 
     public static void startEntity(World world, Entity e) {
-        if (!isActive(ReportType.ENTITIES)) return;
-        getMeasurement(world).startEntity(e.getType());
+        traceBegin(world, e.getType());
+        if (spikeFrame != null) spikeFrame.get(world).startEntity(e.getType());
+        if (isActive(ReportType.CHUNKS)) getMeasurement(world).startPosition(e.getBlockPos());
+        if (reportType == null || !(reportType.sections || reportType.entities)) return;
+        Measurement measurement = getMeasurement(world);
+        if (reportType.sections) measurement.tickedEntities++;
+        if (reportType.entities) measurement.startEntity(e.getType());
     }
 
     public static void startBlockEntity(World world, BlockEntity e) {
-        if (!isActive(ReportType.ENTITIES)) return;
-        getMeasurement(world).startBlockEntity(e.getType());
+        traceBegin(world, e.getType());
+        if (spikeFrame != null) spikeFrame.get(world).startBlockEntity(e.getType());
+        if (isActive(ReportType.CHUNKS)) getMeasurement(world).startPosition(e.getPos());
+        if (reportType == null || !(reportType.sections || reportType.entities)) return;
+        Measurement measurement = getMeasurement(world);
+        if (reportType.sections) measurement.tickedBlockEntities++;
+        if (reportType.entities) measurement.startBlockEntity(e.getType());
+    }
+
+    /**
+     * An entity in a frozen area was skipped, it is still passed to {@link #startEntity(World, Entity)}
+     */
+    public static void frozenEntity(World world, Entity e) {
+        if (reportType == null || !reportType.sections) return;
+        Measurement measurement = getMeasurement(world);
+        measurement.frozenEntities++;
+        measurement.frozenAreaEntities++;
+    }
+
+    public static void frozenBlockEntity(World world) {
+        if (reportType == null || !reportType.sections) return;
+        getMeasurement(world).frozenBlockEntities++;
+    }
+
+    public static void frozenScheduledTick(World world) {
+        if (reportType == null || !reportType.sections) return;
+        getMeasurement(world).frozenScheduledTicks++;
+    }
+
+    /**
+     * The whole world was frozen for this tick
+     */
+    public static void frozenWorld(World world, int entities, int blockEntities) {
+        if (reportType == null || !reportType.sections) return;
+        Measurement measurement = getMeasurement(world);
+        measurement.frozenEntities += entities;
+        measurement.frozenBlockEntities += blockEntities;
     }
 
     public static void endSection(World world) {
-        if (!isActive(ReportType.HEALTH)) return;
+        traceEnd(world);
+        if (Settings.continuousProfiling) getHistory(world).endSection();
+        if (spikeFrame != null) {
+            Measurement m = spikeFrame.get(world);
+            if (m.currentSectionStart != 0) m.endSection();
+        }
+        if (reportType == null || !reportType.sections) return;
         getMeasurement(world).endSection();
     }
 
     public static void endEntity(World world) {
-        if (!isActive(ReportType.ENTITIES)) return;
+        traceEnd(world);
+        if (spikeFrame != null) spikeFrame.get(world).endEntity();
+        if (isActive(ReportType.CHUNKS)) getMeasurement(world).endPosition(recordPositions);
+        if (reportType == null || !reportType.entities) return;
         getMeasurement(world).endEntity();
     }
 
     public static void endBlockEntity(World world) {
-        if (!isActive(ReportType.ENTITIES)) return;
+        traceEnd(world);
+        if (spikeFrame != null) spikeFrame.get(world).endBlockEntity();
+        if (isActive(ReportType.CHUNKS)) getMeasurement(world).endPosition(recordPositions);
+        if (reportType == null || !reportType.entities) return;
         getMeasurement(world).endBlockEntity();
     }
 
+    public static void startScheduledTick(World world, Block block, BlockPos pos) {
+        if (!isActive(ReportType.SCHEDULED_TICKS)) return;
+        Measurement measurement = getMeasurement(world);
+        if (recordPositions) measurement.startPosition(pos);
+        measurement.startScheduledTick(block);
+    }
+
+    public static void startScheduledTick(World world, Fluid fluid, BlockPos pos) {
+        if (!isActive(ReportType.SCHEDULED_TICKS)) return;
+        Measurement measurement = getMeasurement(world);
+        if (recordPositions) measurement.startPosition(pos);
+        measurement.startScheduledTick(fluid);
+    }
+
+    public static void endScheduledTick(World world) {
+        if (!isActive(ReportType.SCHEDULED_TICKS)) return;
+        Measurement measurement = getMeasurement(world);
+        measurement.endScheduledTick();
+        if (recordPositions) measurement.endPosition(false);
+    }
+
+    public static void startRandomTick(World world, Block block) {
+        if (!isActive(ReportType.RANDOM_TICKS)) return;
+        getMeasurement(world).startRandomTick(block);
+    }
+
+    public static void startRandomTick(World world, Fluid fluid) {
+        if (!isActive(ReportType.RANDOM_TICKS)) return;
+        getMeasurement(world).startRandomTick(fluid);
+    }
+
+    public static void endRandomTick(World world) {
+        if (!isActive(ReportType.RANDOM_TICKS)) return;
+        getMeasurement(world).endRandomTick();
+    }
+
+    /**
+     * Starts timing the lightning, snow and ice checks of a chunk, which run before its random ticks
+     */
+    public static void startWeather(World world) {
+        if (!isActive(ReportType.RANDOM_TICKS) || currentTickStart == 0) return;
+        getMeasurement(world).startWeather();
+    }
+
+    public static void endWeather(World world) {
+        if (!isActive(ReportType.RANDOM_TICKS)) return;
+        getMeasurement(world).endWeather();
+    }
+
+    public static void startChunkActivity(World world, ChunkActivity activity) {
+        if (!isActive(ReportType.CHUNK_IO) || Thread.currentThread().getId() != serverThreadId) return;
+        Measurement measurement = getMeasurement(world);
+        if (measurement != null) measurement.startChunkActivity(activity);
+    }
+
+    public static void endChunkActivity(World world, ChunkActivity activity) {
+        if (!isActive(ReportType.CHUNK_IO) || Thread.currentThread().getId() != serverThreadId) return;
+        Measurement measurement = getMeasurement(world);
+        if (measurement != null) measurement.endChunkActivity(activity);
+    }
+
+    /**
+     * @param sourcePos Position of the block causing the update
+     * @param source Block causing the update
+     * @param targetPos Position of the block receiving the update
+     */
+    public static void neighborUpdate(World world, BlockPos sourcePos, Block source, BlockPos targetPos) {
+        if (!isActive(ReportType.UPDATES)) return;
+        Measurement measurement = getMeasurement(world);
+        if (measurement != null) measurement.update(false, sourcePos, source, world.getBlockState(targetPos).getBlock());
+    }
+
+    /**
+     * @param sourcePos Position of the block causing the update
+     * @param source Block causing the update
+     * @param target Block receiving the update
+     */
+    public static void shapeUpdate(World world, BlockPos sourcePos, Block source, Block target) {
+        if (!isActive(ReportType.UPDATES)) return;
+        Measurement measurement = getMeasurement(world);
+        if (measurement != null) measurement.update(true, sourcePos, source, target);
+    }
+
+    /**
+     * @param key Function id, command name or logger name
+     */
+    public static void startCommand(CommandType type, Object key) {
+        if (!isActive(ReportType.COMMANDS) || currentTickStart == 0 || !isServerThread()) return;
+        getMeasurement(null).startCommand(type, key);
+    }
+
+    public static void endCommand() {
+        if (!isActive(ReportType.COMMANDS) || currentTickStart == 0 || !isServerThread()) return;
+        getMeasurement(null).endCommand();
+    }
+
+    /**
+     * Counts a call of a function. Its elements are timed individually since nested calls
+     * only queue the elements of the function behind the running one
+     */
+    public static void callFunction(CommandFunction function) {
+        if (!isActive(ReportType.COMMANDS) || currentTickStart == 0 || !isServerThread()) return;
+        CommandFunction.Element[] elements = function.getElements();
+        if (elements.length > 0 && !FUNCTION_ELEMENTS.containsKey(elements[0])) {
+            for (CommandFunction.Element element : elements) FUNCTION_ELEMENTS.put(element, function.getId());
+        }
+        getMeasurement(null).countCommand(CommandType.FUNCTION, function.getId());
+    }
+
+    public static void startFunctionElement(CommandFunction.Element element) {
+        if (!isActive(ReportType.COMMANDS) || currentTickStart == 0 || !isServerThread()) return;
+        Identifier function = FUNCTION_ELEMENTS.get(element);
+        if (function != null) getMeasurement(null).startCommand(CommandType.FUNCTION, function);
+    }
+
+    public static void endFunctionElement(CommandFunction.Element element) {
+        if (!isActive(ReportType.COMMANDS) || currentTickStart == 0 || !isServerThread()) return;
+        if (FUNCTION_ELEMENTS.containsKey(element)) getMeasurement(null).endCommand();
+    }
+
+    private static boolean isServerThread() {
+        return !parallelWorlds || Thread.currentThread().getId() == serverThreadId;
+    }
+
+    /**
+     * Prepares the per-world state for being updated from the threads of {@code worlds} until {@link #endParallelWorlds}
+     */
+    public static void startParallelWorlds(Iterable<ServerWorld> worlds) {
+        for (ServerWorld world : worlds) {
+            if (Settings.continuousProfiling) getHistory(world);
+            if (spikeFrame != null) spikeFrame.get(world);
+        }
+        parallelWorlds = true;
+    }
+
+    /**
+     * @param serialNanos Sum of the tick times of all worlds
+     * @param wallNanos Time from starting the worlds until all of them finished
+     */
+    public static void endParallelWorlds(long serialNanos, long wallNanos) {
+        parallelWorlds = false;
+        if (reportType == null || currentTickStart == 0) return;
+        parallelSerialTime += serialNanos;
+        parallelWallTime += wallNanos;
+    }
+
+    /**
+     * @return Whether the profiler can be updated from several threads at once
+     */
+    public static boolean supportsParallelWorlds() {
+        return trace == null;
+    }
+
+    public static void chunkLit() {
+        LIT_CHUNKS.increment();
+    }
+
+    /**
+     * @param pendingTasks Number of tasks queued on the chunk manager's main thread executor
+     */
+    public static void sampleChunkQueues(World world, int pendingTasks) {
+        if (!isActive(ReportType.CHUNK_IO) || currentTickStart == 0) return;
+        Measurement measurement = getMeasurement(world);
+        if (measurement == null) return;
+        measurement.chunkTaskQueue.sample(pendingTasks);
+        ExecutorService worker = Util.getMainWorkerExecutor();
+        if (worker instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) worker;
+            measurement.workerQueue.sample((int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount()));
+        }
+    }
+
+    /**
+     * @param fluids Whether {@code size} is the size of the fluid or the block tick queue
+     * @param size Number of scheduled ticks pending before the scheduler runs
+     */
+    public static void sampleTickQueue(World world, boolean fluids, int size) {
+        if (!isActive(ReportType.SCHEDULED_TICKS) || currentTickStart == 0) return;
+        Measurement measurement = getMeasurement(world);
+        (fluids ? measurement.fluidTickQueue : measurement.blockTickQueue).sample(size);
+    }
+
     public static void startTick() {
+        if (Settings.lagSpikeThreshold > 0) {
+            spikeFrameIndex = (spikeFrameIndex + 1) % SPIKE_FRAMES;
+            Frame frame = spikeFrames[spikeFrameIndex];
+            if (frame == null) frame = spikeFrames[spikeFrameIndex] = new Frame();
+            frame.reset();
+            spikeFrame = frame;
+        } else if (spikeFrame != null) {
+            Arrays.fill(spikeFrames, null);
+            spikeFrame = null;
+        }
+        serverThreadId = Thread.currentThread().getId();
+        if (recordsAllocations()) currentTickAllocated = AllocationCounter.getAllocatedBytes(serverThreadId);
         currentTickStart = System.nanoTime();
         inTick = true;
+        traceBegin(null, "tick");
     }
 
     public static void endTick(MinecraftServer server) {
+        traceEnd(null);
         inTick = false;
-        if (currentTickStart == 0L || reportType == null) return;
-        totalTickTime += System.nanoTime() - currentTickStart;
+        if (currentTickStart == 0L) return;
+        long tickTime = System.nanoTime() - currentTickStart;
+        if (Settings.continuousProfiling) commitHistory(tickTime);
+        if (spikeFrame != null) {
+            spikeFrame.tick = server.getTicks();
+            spikeFrame.tickTime = tickTime;
+            if (tickTime > Settings.lagSpikeThreshold * TickSpeed.getServerTickSpeed().msptGoal * 1e6) {
+                captureSpike(server, spikeFrame);
+            }
+        }
+        if (reportType == null) return;
+        totalTickTime += tickTime;
+        if (recordsAllocations()) totalTickAllocated += AllocationCounter.getAllocatedBytes(serverThreadId) - currentTickAllocated;
+        if (isActive(ReportType.BENCHMARK)) benchmarkTicks.record(tickTime);
         if (--ticksRemaining <= 0) {
             finalizeTickReport(server);
         }
@@ -236,49 +1093,223 @@ public class CarpetProfiler
         return reportType == type;
     }
 
+    private static boolean recordsAllocations() {
+        return reportType == ReportType.ALLOCATIONS || reportType == ReportType.BENCHMARK;
+    }
+
+    /**
+     * Starts a {@link ReportType#BENCHMARK} report that is passed to {@code callback} as JSON instead of being broadcast
+     */
+    public static boolean startBenchmarkReport(MinecraftServer server, int ticks, Consumer<JsonObject> callback) {
+        if (!startTickReport(server, ReportType.BENCHMARK, ticks)) return false;
+        benchmarkCallback = callback;
+        return true;
+    }
+
     private static void finalizeTickReport(MinecraftServer server) {
         if (reportType == ReportType.HEALTH) finalizeTickHealthReport(server);
         else if (reportType == ReportType.ENTITIES) finalizeTickEntitiesReport(server);
+        else if (reportType == ReportType.CHUNKS) finalizeTickChunksReport(server);
+        else if (reportType == ReportType.ALLOCATIONS) finalizeTickAllocationsReport(server);
+        else if (reportType == ReportType.TRACE) finalizeTraceReport(server);
+        else if (reportType == ReportType.SCHEDULED_TICKS) finalizeScheduledTicksReport(server);
+        else if (reportType == ReportType.RANDOM_TICKS) finalizeRandomTicksReport(server);
+        else if (reportType == ReportType.NETWORK) finalizeNetworkReport(server);
+        else if (reportType == ReportType.CHUNK_IO) finalizeChunkIoReport(server);
+        else if (reportType == ReportType.UPDATES) finalizeUpdatesReport(server);
+        else if (reportType == ReportType.COMMANDS) finalizeCommandsReport(server);
+        else if (reportType == ReportType.BENCHMARK) finalizeBenchmarkReport(server);
         reportType = null;
     }
 
     private static void finalizeTickHealthReport(MinecraftServer server) {
-        double divider = 1e-6 / ticksTotal;
-        double avgTickTime = divider * totalTickTime;
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
         broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, 50), avgTickTime)));
+        for (MutableText line : formatHealthReport(server, MEASUREMENTS, ticksTotal, totalTickTime)) broadcast(server, line);
+    }
+
+    private static List<MutableText> formatHealthReport(MinecraftServer server, Map<RegistryKey<World>, Measurement> measurements, int ticks, long totalTime) {
+        List<MutableText> lines = new ArrayList<>();
+        double divider = 1e-6 / ticks;
         long accumulated = 0L;
 
-        Measurement global = MEASUREMENTS.get(null);
-        for (SectionType section : SectionType.GLOBAL) {
-            long nanos = global.sections.getLong(section);
-            accumulated += nanos;
-            double amount = divider * nanos;
-            double avgTime = nanos / (1e6 * global.sectionCount.getInt(section));
-            if (amount > 0.01 || avgTime > 0.1) {
-                broadcast(server, section.format(amount, avgTime));
+        Measurement global = measurements.get(null);
+        if (global != null) {
+            for (SectionType section : SectionType.GLOBAL) {
+                long nanos = global.sections[section.column];
+                accumulated += nanos;
+                double amount = divider * nanos;
+                double avgTime = nanos / (1e6 * global.sectionCount[section.column]);
+                if (amount > 0.01 || avgTime > 0.1) {
+                    lines.add(section.format(amount, avgTime));
+                }
             }
         }
-        for (ServerWorld world : QuickCarpetServer.getMinecraftServer().getWorlds()) {
-            Measurement measurement = MEASUREMENTS.get(world.getRegistryKey());
+        for (ServerWorld world : server.getWorlds()) {
+            Measurement measurement = measurements.get(world.getRegistryKey());
+            if (measurement == null) continue;
             List<MutableText> messages = new ArrayList<>();
             for (SectionType section : SectionType.PER_DIMENSION) {
-                long nanos = measurement.sections.getLong(section);
+                long nanos = measurement.sections[section.column];
                 accumulated += nanos;
                 double amount = divider * nanos;
-                double avgTime = nanos / (1e6 * measurement.sectionCount.getInt(section));
+                double avgTime = nanos / (1e6 * measurement.sectionCount[section.column]);
                 if (amount > 0.01 || avgTime > 0.1) {
                     messages.add(c(s(" - "), section.format(amount, avgTime)));
                 }
             }
+            if (measurement.frozenEntities > 0 || measurement.frozenBlockEntities > 0 || measurement.frozenScheduledTicks > 0) {
+                messages.add(c(s(" - "), formatFrozen(measurements, measurement, ticks)));
+            }
             if (!messages.isEmpty()) {
-                broadcast(server, String.valueOf(world.getRegistryKey().getValue()));
-                for (MutableText m : messages) broadcast(server, m);
+                lines.add(s(String.valueOf(world.getRegistryKey().getValue())));
+                lines.addAll(messages);
+            }
+        }
+
+        long rest = totalTime - accumulated;
+        // dimensions that ticked in parallel overlap in wall time
+        if (measurements == MEASUREMENTS) rest += parallelSerialTime - parallelWallTime;
+
+        lines.add(SectionType.UNKNOWN.format(divider * rest, 0));
+        if (measurements == MEASUREMENTS && parallelSerialTime > 0) {
+            lines.add(t("carpet.profiler.parallel",
+                formats("%.3f", Formatting.WHITE, divider * parallelWallTime),
+                formats("%.3f", Formatting.WHITE, divider * parallelSerialTime),
+                formats("%.3f", Formatting.GREEN, divider * (parallelSerialTime - parallelWallTime))));
+        }
+        return lines;
+    }
+
+    /**
+     * Estimates the time saved by frozen entities and block entities from the average time of ticked ones,
+     * in this dimension or in all dimensions if none were ticked here
+     */
+    private static MutableText formatFrozen(Map<RegistryKey<World>, Measurement> measurements, Measurement measurement, int ticks) {
+        double entityTime = averageTime(measurement, SectionType.ENTITIES);
+        double blockEntityTime = averageTime(measurement, SectionType.BLOCK_ENTITIES);
+        if (Double.isNaN(entityTime) || Double.isNaN(blockEntityTime)) {
+            long entityNanos = 0, entities = 0, blockEntityNanos = 0, blockEntities = 0;
+            for (Measurement m : measurements.values()) {
+                if (m.dimension == null) continue;
+                entityNanos += m.sections[SectionType.ENTITIES.column];
+                entities += m.tickedEntities - m.frozenAreaEntities;
+                blockEntityNanos += m.sections[SectionType.BLOCK_ENTITIES.column];
+                blockEntities += m.tickedBlockEntities;
             }
+            if (Double.isNaN(entityTime)) entityTime = entities > 0 ? (double) entityNanos / entities : 0;
+            if (Double.isNaN(blockEntityTime)) blockEntityTime = blockEntities > 0 ? (double) blockEntityNanos / blockEntities : 0;
         }
+        double saved = (measurement.frozenEntities * entityTime + measurement.frozenBlockEntities * blockEntityTime) * 1e-6 / ticks;
+        return t("carpet.profiler.frozen",
+            formats("%.1f", Formatting.WHITE, (double) measurement.frozenEntities / ticks),
+            formats("%.1f", Formatting.WHITE, (double) measurement.frozenBlockEntities / ticks),
+            formats("%.1f", Formatting.WHITE, (double) measurement.frozenScheduledTicks / ticks),
+            formats("%.3f", Formatting.GREEN, saved));
+    }
 
-        long rest = totalTickTime - accumulated;
+    /**
+     * @return Average nanoseconds per ticked entity or block entity of the section, or {@code NaN} if there were none
+     */
+    private static double averageTime(Measurement measurement, SectionType section) {
+        long count = section == SectionType.ENTITIES ? measurement.tickedEntities - measurement.frozenAreaEntities : measurement.tickedBlockEntities;
+        if (count <= 0) return Double.NaN;
+        return (double) measurement.sections[section.column] / count;
+    }
+
+    private static void commitHistory(long tickTime) {
+        History global = getHistory(null);
+        global.sections.add(TICK_COLUMN, tickTime);
+        global.sections.commit();
+        for (History history : HISTORY.values()) history.sections.commit();
+        long now = System.nanoTime();
+        long accumulated = 0;
+        for (SectionType section : SectionType.values()) {
+            if (section == SectionType.UNKNOWN) continue;
+            long nanos = 0;
+            if (section.global) {
+                nanos = global.sections.get(section.column, 0);
+            } else {
+                for (History history : HISTORY.values()) nanos += history.sections.get(section.column, 0);
+            }
+            accumulated += nanos;
+            SECTION_LOAD[section.ordinal()].sample(nanos * 1e-6, now);
+        }
+        SECTION_LOAD[SectionType.UNKNOWN.ordinal()].sample((tickTime - accumulated) * 1e-6, now);
+    }
 
-        broadcast(server, SectionType.UNKNOWN.format(divider * rest, 0));
+    /**
+     * Load average of a section in ms per tick, only sampled while {@link Settings#continuousProfiling} is enabled
+     * @param horizon Index into {@link LoadAverage#HORIZONS}
+     */
+    public static double getSectionLoad(SectionType section, int horizon) {
+        return SECTION_LOAD[section.ordinal()].get(horizon);
+    }
+
+    private static MutableText formatHistory(SectionType section, SectionHistory history, int ticks) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        history.addTo(histogram, section.column, ticks);
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        double mean = histogram.getMean() / 1e6;
+        double p99 = histogram.getValueAtPercentile(99) / 1e6;
+        double max = histogram.getMax() / 1e6;
+        return t("carpet.profiler.history.section", section.getName(),
+            formats("%.3f", getHeatmapColor(mean, msptGoal), mean),
+            formats("%.3f", getHeatmapColor(p99, msptGoal), p99),
+            formats("%.3f", getHeatmapColor(max, msptGoal), max)
+        );
+    }
+
+    /**
+     * Reports the continuously recorded section timings of the last {@code ticks} ticks
+     * @param source Receiver of the report
+     * @param ticks Size of the window, capped at the ticks recorded so far
+     * @return The number of ticks the report covers
+     */
+    public static int printHistoryReport(ServerCommandSource source, int ticks) {
+        if (!Settings.continuousProfiling || globalHistory == null || globalHistory.sections.size() == 0) {
+            m(source, ts("carpet.profiler.history.disabled", Formatting.RED));
+            return 0;
+        }
+        SectionHistory global = globalHistory.sections;
+        ticks = Math.min(ticks, global.size());
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        LatencyHistogram tickTimes = new LatencyHistogram();
+        global.addTo(tickTimes, TICK_COLUMN, ticks);
+        double mean = tickTimes.getMean() / 1e6;
+        double p50 = tickTimes.getValueAtPercentile(50) / 1e6;
+        double p99 = tickTimes.getValueAtPercentile(99) / 1e6;
+        double max = tickTimes.getMax() / 1e6;
+        m(source, t("carpet.profiler.history.title", ticks,
+            formats("%.3f", getHeatmapColor(mean, msptGoal), mean),
+            formats("%.3f", getHeatmapColor(p50, msptGoal), p50),
+            formats("%.3f", getHeatmapColor(p99, msptGoal), p99),
+            formats("%.3f", getHeatmapColor(max, msptGoal), max)
+        ));
+        long accumulated = 0;
+        for (SectionType section : SectionType.GLOBAL) {
+            long nanos = global.getTotal(section.column, ticks);
+            accumulated += nanos;
+            if (nanos * 1e-6 / ticks > 0.01) m(source, formatHistory(section, global, ticks));
+        }
+        for (ServerWorld world : source.getMinecraftServer().getWorlds()) {
+            History history = HISTORY.get(world.getRegistryKey());
+            if (history == null) continue;
+            int worldTicks = Math.min(ticks, history.sections.size());
+            List<MutableText> messages = new ArrayList<>();
+            for (SectionType section : SectionType.PER_DIMENSION) {
+                long nanos = history.sections.getTotal(section.column, worldTicks);
+                accumulated += nanos;
+                if (nanos * 1e-6 / ticks > 0.01) messages.add(c(s(" - "), formatHistory(section, history.sections, worldTicks)));
+            }
+            if (!messages.isEmpty()) {
+                m(source, s(String.valueOf(world.getRegistryKey().getValue())));
+                for (MutableText msg : messages) m(source, msg);
+            }
+        }
+        long rest = global.getTotal(TICK_COLUMN, ticks) - accumulated;
+        m(source, SectionType.UNKNOWN.format(rest * 1e-6 / ticks, 0));
+        return ticks;
     }
 
     private static MutableText format(Object2LongMap.Entry<Pair<Measurement, Object>> entry, double value, double msptGoal) {
@@ -290,32 +1321,486 @@ public class CarpetProfiler
     }
 
     private static void finalizeTickEntitiesReport(MinecraftServer server) {
-        double divider = 1e-6 / ticksTotal;
-        double avgTickTime = divider * totalTickTime;
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
         float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
         broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (MutableText line : formatEntitiesReport(MEASUREMENTS, ticksTotal)) broadcast(server, line);
+    }
+
+    private static List<MutableText> formatEntitiesReport(Map<RegistryKey<World>, Measurement> measurements, int ticks) {
+        List<MutableText> lines = new ArrayList<>();
+        double divider = 1e-6 / ticks;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
         Object2LongMap<Pair<Measurement, Object>> counts = new Object2LongOpenHashMap<>();
         Object2LongMap<Pair<Measurement, Object>> times = new Object2LongOpenHashMap<>();
-        for (Measurement m : MEASUREMENTS.values()) {
-            for (EntityType e : m.entityCount.keySet()) {
-                counts.put(new Pair<>(m, e), m.entityCount.getLong(e));
-                times.put(new Pair<>(m, e), m.entityTimes.getLong(e));
+        for (Measurement m : measurements.values()) {
+            for (int id = 0; id < m.entityCount.size(); id++) {
+                if (m.entityCount.get(id) == 0) continue;
+                EntityType<?> e = Registry.ENTITY_TYPE.get(id);
+                counts.put(new Pair<>(m, e), m.entityCount.get(id));
+                times.put(new Pair<>(m, e), m.entityTimes.get(id));
             }
-            for (BlockEntityType be : m.blockEntityCount.keySet()) {
-                counts.put(new Pair<>(m, be), m.blockEntityCount.getLong(be));
-                times.put(new Pair<>(m, be), m.blockEntityTimes.getLong(be));
+            for (int id = 0; id < m.blockEntityCount.size(); id++) {
+                if (m.blockEntityCount.get(id) == 0) continue;
+                BlockEntityType<?> be = Registry.BLOCK_ENTITY_TYPE.get(id);
+                counts.put(new Pair<>(m, be), m.blockEntityCount.get(id));
+                times.put(new Pair<>(m, be), m.blockEntityTimes.get(id));
             }
         }
-        broadcast(server, t("carpet.profiler.top_10_counts"));
+        lines.add(t("carpet.profiler.top_10_counts"));
         counts.object2LongEntrySet().stream()
             .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
             .limit(10)
-            .forEachOrdered(e -> broadcast(server, format(e, (double) e.getLongValue() / ticksTotal, 0)));
-        broadcast(server, t("carpet.profiler.top_10_grossing"));
+            .forEachOrdered(e -> lines.add(format(e, (double) e.getLongValue() / ticks, 0)));
+        lines.add(t("carpet.profiler.top_10_grossing"));
         times.object2LongEntrySet().stream()
             .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
             .limit(10)
-            .forEachOrdered(e -> broadcast(server, c(format(e, e.getLongValue() * divider, msptGoal), s("ms"))));
+            .forEachOrdered(e -> lines.add(c(format(e, e.getLongValue() * divider, msptGoal), s("ms"))));
+        return lines;
+    }
+
+    private static MutableText teleport(RegistryKey<World> dimension, MutableText text, int x, String y, int z) {
+        String command = String.format(Locale.ROOT, "/execute in %s run tp @s %d %s %d", dimension.getValue(), x, y, z);
+        return runCommand(text, command, s(command));
+    }
+
+    private static void broadcastHottestChunks(MinecraftServer server, RegistryKey<World> dimension, Measurement measurement) {
+        double divider = 1e-6 / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.chunks.title", Math.min(TOP_CHUNKS, measurement.chunkTimes.size()), dimension.getValue()));
+        measurement.chunkTimes.long2LongEntrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
+            .limit(TOP_CHUNKS)
+            .forEachOrdered(e -> {
+                long chunk = e.getLongKey();
+                int x = ChunkPos.getPackedX(chunk);
+                int z = ChunkPos.getPackedZ(chunk);
+                double time = e.getLongValue() * divider;
+                MutableText pos = teleport(dimension, s(String.format(Locale.ROOT, "[ %d, %d ]", x, z), Formatting.AQUA), (x << 4) + 8, "~", (z << 4) + 8);
+                broadcast(server, t("carpet.profiler.chunks.line", pos,
+                    formats("%.3f", getHeatmapColor(time, msptGoal), time),
+                    formats("%.1f", Formatting.GRAY, (double) measurement.chunkCounts.get(chunk) / ticksTotal)));
+            });
+    }
+
+    private static void finalizeTickChunksReport(MinecraftServer server) {
+        double divider = 1e-6 / ticksTotal;
+        double avgTickTime = divider * totalTickTime;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (ServerWorld world : server.getWorlds()) {
+            RegistryKey<World> dimension = world.getRegistryKey();
+            Measurement measurement = MEASUREMENTS.get(dimension);
+            if (measurement == null || measurement.chunkTimes.isEmpty()) continue;
+            broadcastHottestChunks(server, dimension, measurement);
+            if (measurement.positionTimes.isEmpty()) continue;
+            broadcast(server, t("carpet.profiler.positions.title", Math.min(TOP_CHUNKS, measurement.positionTimes.size()), dimension.getValue()));
+            measurement.positionTimes.long2LongEntrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
+                .limit(TOP_CHUNKS)
+                .forEachOrdered(e -> {
+                    BlockPos blockPos = BlockPos.fromLong(e.getLongKey());
+                    double time = e.getLongValue() * divider;
+                    MutableText pos = teleport(dimension, s(String.format(Locale.ROOT, "[ %d, %d, %d ]", blockPos.getX(), blockPos.getY(), blockPos.getZ()), Formatting.AQUA),
+                        blockPos.getX(), Integer.toString(blockPos.getY()), blockPos.getZ());
+                    broadcast(server, t("carpet.profiler.positions.line", pos, formats("%.3f", getHeatmapColor(time, msptGoal), time)));
+                });
+        }
+    }
+
+    private static void broadcastScheduledTicks(MinecraftServer server, String type, TickQueue queue, IdCounters times, IdCounters counts, IntFunction<Identifier> ids) {
+        if (queue.samples == 0) return;
+        broadcast(server, t("carpet.profiler.scheduled.queue", t("carpet.profiler.scheduled." + type), formatQueue(queue)));
+        broadcastTopIds(server, times, counts, ids);
+    }
+
+    private static void broadcastTopIds(MinecraftServer server, IdCounters times, IdCounters counts, IntFunction<Identifier> ids) {
+        double divider = 1e-6 / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        IntList ranked = new IntArrayList();
+        for (int id = 0; id < counts.size(); id++) {
+            if (counts.get(id) > 0) ranked.add(id);
+        }
+        ranked.sort((a, b) -> Long.compare(times.get(b), times.get(a)));
+        for (int i = 0; i < Math.min(10, ranked.size()); i++) {
+            int id = ranked.getInt(i);
+            double time = times.get(id) * divider;
+            broadcast(server, t("carpet.profiler.type.line", ids.apply(id),
+                formats("%.3f", getHeatmapColor(time, msptGoal), time),
+                formats("%.1f", Formatting.GRAY, (double) counts.get(id) / ticksTotal)));
+        }
+    }
+
+    private static void finalizeScheduledTicksReport(MinecraftServer server) {
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (ServerWorld world : server.getWorlds()) {
+            RegistryKey<World> dimension = world.getRegistryKey();
+            Measurement measurement = MEASUREMENTS.get(dimension);
+            if (measurement == null) continue;
+            broadcast(server, s(String.valueOf(dimension.getValue())));
+            broadcastScheduledTicks(server, "blocks", measurement.blockTickQueue, measurement.blockTickTimes, measurement.blockTickCount, id -> Registry.BLOCK.getId(Registry.BLOCK.get(id)));
+            broadcastScheduledTicks(server, "fluids", measurement.fluidTickQueue, measurement.fluidTickTimes, measurement.fluidTickCount, id -> Registry.FLUID.getId(Registry.FLUID.get(id)));
+            if (!measurement.chunkTimes.isEmpty()) broadcastHottestChunks(server, dimension, measurement);
+        }
+    }
+
+    private static void finalizeRandomTicksReport(MinecraftServer server) {
+        double divider = 1e-6 / ticksTotal;
+        double avgTickTime = divider * totalTickTime;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (ServerWorld world : server.getWorlds()) {
+            RegistryKey<World> dimension = world.getRegistryKey();
+            Measurement measurement = MEASUREMENTS.get(dimension);
+            if (measurement == null || measurement.randomTickChunks == 0) continue;
+            double weather = measurement.weatherTime * divider;
+            broadcast(server, t("carpet.profiler.random_ticks.title", dimension.getValue(),
+                formats("%.1f", Formatting.AQUA, (double) measurement.randomTickChunks / ticksTotal),
+                formats("%.3f", getHeatmapColor(weather, msptGoal), weather)
+            ));
+            broadcastTopIds(server, measurement.randomTickTimes, measurement.randomTickCount, id -> Registry.BLOCK.getId(Registry.BLOCK.get(id)));
+            broadcastTopIds(server, measurement.fluidRandomTickTimes, measurement.fluidRandomTickCount, id -> Registry.FLUID.getId(Registry.FLUID.get(id)));
+        }
+    }
+
+    private static MutableText formatQueue(TickQueue queue) {
+        Formatting trend = queue.last > queue.first ? Formatting.RED : Formatting.GREEN;
+        return t("carpet.profiler.queue",
+            formats("%.1f", Formatting.AQUA, (double) queue.total / queue.samples),
+            formats("%d", Formatting.AQUA, queue.max),
+            formats("%d", Formatting.GRAY, queue.first),
+            formats("%d", trend, queue.last)
+        );
+    }
+
+    private static void finalizeChunkIoReport(MinecraftServer server) {
+        double divider = 1e-6 / ticksTotal;
+        double avgTickTime = divider * totalTickTime;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (ServerWorld world : server.getWorlds()) {
+            RegistryKey<World> dimension = world.getRegistryKey();
+            Measurement measurement = MEASUREMENTS.get(dimension);
+            if (measurement == null) continue;
+            broadcast(server, s(String.valueOf(dimension.getValue())));
+            for (ChunkActivity activity : ChunkActivity.values()) {
+                int count = measurement.chunkActivityCount[activity.ordinal()];
+                if (count == 0) continue;
+                double time = measurement.chunkActivityTimes[activity.ordinal()] * divider;
+                broadcast(server, t("carpet.profiler.type.line", activity.getName(),
+                    formats("%.3f", getHeatmapColor(time, msptGoal), time),
+                    formats("%.1f", Formatting.GRAY, (double) count / ticksTotal)));
+            }
+            if (measurement.chunkTaskQueue.samples > 0) {
+                broadcast(server, t("carpet.profiler.chunk_io.queue", formatQueue(measurement.chunkTaskQueue)));
+            }
+            if (measurement.workerQueue.samples > 0) {
+                broadcast(server, t("carpet.profiler.chunk_io.worker_queue", formatQueue(measurement.workerQueue)));
+            }
+        }
+        long lit = LIT_CHUNKS.sum() - litChunksStart;
+        broadcast(server, t("carpet.profiler.chunk_io.light", formats("%.1f", Formatting.AQUA, (double) lit / ticksTotal)));
+    }
+
+    private static void finalizeBenchmarkReport(MinecraftServer server) {
+        Consumer<JsonObject> callback = benchmarkCallback;
+        benchmarkCallback = null;
+        if (callback == null) return;
+        JsonObject report = new JsonObject();
+        report.addProperty("ticks", ticksTotal);
+        JsonObject mspt = new JsonObject();
+        mspt.addProperty("mean", benchmarkTicks.getMean() / 1e6);
+        mspt.addProperty("stdDev", benchmarkTicks.getStdDev() / 1e6);
+        mspt.addProperty("min", benchmarkTicks.getMin() / 1e6);
+        for (double percentile : new double[] {50, 90, 95, 99, 99.9}) {
+            mspt.addProperty("p" + (percentile == (int) percentile ? String.valueOf((int) percentile) : String.valueOf(percentile)), benchmarkTicks.getValueAtPercentile(percentile) / 1e6);
+        }
+        mspt.addProperty("max", benchmarkTicks.getMax() / 1e6);
+        report.add("mspt", mspt);
+        report.addProperty("allocatedBytes", totalTickAllocated);
+        report.addProperty("allocatedBytesPerTick", (double) totalTickAllocated / ticksTotal);
+        long accumulated = 0;
+        JsonObject sections = new JsonObject();
+        Measurement global = MEASUREMENTS.get(null);
+        JsonObject globalSections = new JsonObject();
+        for (SectionType section : SectionType.GLOBAL) {
+            if (section == SectionType.UNKNOWN) continue;
+            accumulated += global.sections[section.column];
+            globalSections.add(section.name().toLowerCase(Locale.ROOT), sectionToJson(global, section.column));
+        }
+        sections.add("server", globalSections);
+        for (ServerWorld world : server.getWorlds()) {
+            Measurement measurement = MEASUREMENTS.get(world.getRegistryKey());
+            if (measurement == null) continue;
+            JsonObject dimension = new JsonObject();
+            for (SectionType section : SectionType.PER_DIMENSION) {
+                accumulated += measurement.sections[section.column];
+                dimension.add(section.name().toLowerCase(Locale.ROOT), sectionToJson(measurement, section.column));
+            }
+            dimension.add("entities", typesToJson(measurement.entityTimes, measurement.entityCount, measurement.entityAllocations, id -> EntityType.getId(Registry.ENTITY_TYPE.get(id))));
+            dimension.add("blockEntities", typesToJson(measurement.blockEntityTimes, measurement.blockEntityCount, measurement.blockEntityAllocations, id -> BlockEntityType.getId(Registry.BLOCK_ENTITY_TYPE.get(id))));
+            sections.add(String.valueOf(world.getRegistryKey().getValue()), dimension);
+        }
+        JsonObject unknown = new JsonObject();
+        unknown.addProperty("ms", (totalTickTime - accumulated + parallelSerialTime - parallelWallTime) * 1e-6 / ticksTotal);
+        globalSections.add("unknown", unknown);
+        report.add("sections", sections);
+        if (parallelSerialTime > 0) report.addProperty("parallelDimensionsSavedMs", (parallelSerialTime - parallelWallTime) * 1e-6 / ticksTotal);
+        callback.accept(report);
+    }
+
+    private static JsonObject sectionToJson(Measurement measurement, int column) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("ms", measurement.sections[column] * 1e-6 / ticksTotal);
+        obj.addProperty("count", (double) measurement.sectionCount[column] / ticksTotal);
+        obj.addProperty("allocatedBytes", (double) measurement.sectionAllocations[column] / ticksTotal);
+        return obj;
+    }
+
+    private static JsonObject typesToJson(IdCounters times, IdCounters counts, IdCounters allocations, IntFunction<Identifier> ids) {
+        JsonObject obj = new JsonObject();
+        for (int id = 0; id < counts.size(); id++) {
+            if (counts.get(id) == 0) continue;
+            JsonObject type = new JsonObject();
+            type.addProperty("ms", times.get(id) * 1e-6 / ticksTotal);
+            type.addProperty("count", (double) counts.get(id) / ticksTotal);
+            type.addProperty("allocatedBytes", (double) allocations.get(id) / ticksTotal);
+            obj.add(String.valueOf(ids.apply(id)), type);
+        }
+        return obj;
+    }
+
+    private static void finalizeCommandsReport(MinecraftServer server) {
+        double divider = 1e-6 / ticksTotal;
+        double avgTickTime = divider * totalTickTime;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        Measurement measurement = MEASUREMENTS.get(null);
+        if (measurement == null) return;
+        for (CommandType type : CommandType.values()) {
+            CommandStats stats = measurement.commandStats[type.ordinal()];
+            if (stats.count == 0) continue;
+            double total = stats.total * divider;
+            broadcast(server, t("carpet.profiler.type.line", type.getName(),
+                formats("%.3f", getHeatmapColor(total, msptGoal), total),
+                formats("%.1f", Formatting.GRAY, (double) stats.count / ticksTotal)));
+            if (type == CommandType.SCHEDULE) continue;
+            stats.times.object2LongEntrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
+                .limit(10)
+                .forEachOrdered(e -> {
+                    double time = e.getLongValue() * divider;
+                    broadcast(server, c(s("  "), t("carpet.profiler.type.line", String.valueOf(e.getKey()),
+                        formats("%.3f", getHeatmapColor(time, msptGoal), time),
+                        formats("%.1f", Formatting.GRAY, (double) stats.counts.getInt(e.getKey()) / ticksTotal))));
+                });
+        }
+    }
+
+    private static void broadcastUpdatePairs(MinecraftServer server, String title, long total, Long2IntOpenHashMap pairs) {
+        if (total == 0) return;
+        broadcast(server, t(title, formats("%.1f", Formatting.AQUA, (double) total / ticksTotal)));
+        pairs.long2IntEntrySet().stream()
+            .sorted((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()))
+            .limit(10)
+            .forEachOrdered(e -> {
+                Identifier source = Registry.BLOCK.getId(Registry.BLOCK.get((int) (e.getLongKey() >>> 32)));
+                Identifier target = Registry.BLOCK.getId(Registry.BLOCK.get((int) e.getLongKey()));
+                broadcast(server, t("carpet.profiler.updates.pair", source, target, formats("%.1f", Formatting.AQUA, (double) e.getIntValue() / ticksTotal)));
+            });
+    }
+
+    private static void finalizeUpdatesReport(MinecraftServer server) {
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        for (ServerWorld world : server.getWorlds()) {
+            RegistryKey<World> dimension = world.getRegistryKey();
+            Measurement measurement = MEASUREMENTS.get(dimension);
+            if (measurement == null || measurement.updateSources.isEmpty()) continue;
+            broadcast(server, s(String.valueOf(dimension.getValue())));
+            broadcastUpdatePairs(server, "carpet.profiler.updates.neighbor", measurement.neighborUpdateCount, measurement.neighborUpdates);
+            broadcastUpdatePairs(server, "carpet.profiler.updates.shape", measurement.shapeUpdateCount, measurement.shapeUpdates);
+            broadcast(server, t("carpet.profiler.updates.sources", Math.min(TOP_CHUNKS, measurement.updateSources.size())));
+            measurement.updateSources.long2IntEntrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()))
+                .limit(TOP_CHUNKS)
+                .forEachOrdered(e -> {
+                    BlockPos blockPos = BlockPos.fromLong(e.getLongKey());
+                    MutableText pos = teleport(dimension, s(String.format(Locale.ROOT, "[ %d, %d, %d ]", blockPos.getX(), blockPos.getY(), blockPos.getZ()), Formatting.AQUA),
+                        blockPos.getX(), Integer.toString(blockPos.getY()), blockPos.getZ());
+                    broadcast(server, t("carpet.profiler.updates.source", pos, formats("%.1f", Formatting.AQUA, (double) e.getIntValue() / ticksTotal)));
+                });
+        }
+    }
+
+    private static <K> void broadcastPackets(MinecraftServer server, String title, List<PacketCounter.Entry<K>> entries, Function<K, String> name, boolean outgoing) {
+        if (entries.isEmpty()) return;
+        broadcast(server, t(title));
+        for (PacketCounter.Entry<K> e : entries.subList(0, Math.min(10, entries.size()))) {
+            MutableText count = formats("%.1f", Formatting.AQUA, (double) e.count / ticksTotal);
+            if (!outgoing) {
+                broadcast(server, t("carpet.profiler.network.in", name.apply(e.key), count));
+                continue;
+            }
+            broadcast(server, t("carpet.profiler.network.out", name.apply(e.key), count,
+                formatBytes((double) e.bytes / ticksTotal, Formatting.AQUA),
+                formats("%.3f", Formatting.GRAY, e.nanos * 1e-6 / ticksTotal)));
+        }
+    }
+
+    private static void finalizeNetworkReport(MinecraftServer server) {
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        PacketCounter.Window window = new PacketCounter.Window().since(networkStart);
+        networkStart = null;
+        broadcastPackets(server, "carpet.profiler.network.out_types", window.getOutByType(), PacketCounter::getName, true);
+        broadcastPackets(server, "carpet.profiler.network.out_players", window.getOutByPlayer(), Function.identity(), true);
+        broadcastPackets(server, "carpet.profiler.network.in_types", window.getInByType(), PacketCounter::getName, false);
+        broadcastPackets(server, "carpet.profiler.network.in_players", window.getInByPlayer(), Function.identity(), false);
+    }
+
+    public static MutableText formatBytes(double bytes, Formatting style) {
+        if (bytes < 1024) return formats("%.0fB", style, bytes);
+        if (bytes < 1024 * 1024) return formats("%.1fKB", style, bytes / 1024);
+        if (bytes < 1024 * 1024 * 1024) return formats("%.2fMB", style, bytes / (1024 * 1024));
+        return formats("%.2fGB", style, bytes / (1024 * 1024 * 1024));
+    }
+
+    private static MutableText formatAllocations(Object2LongMap.Entry<Pair<Measurement, Object>> entry, int ticks) {
+        Pair<Measurement, Object> key = entry.getKey();
+        Identifier dim = key.getLeft().dimension.getValue();
+        Object e = key.getRight();
+        Identifier ent = e instanceof EntityType ? EntityType.getId((EntityType) e) : BlockEntityType.getId((BlockEntityType) e);
+        return t("carpet.profiler.entity.line", ent, dim, formatBytes((double) entry.getLongValue() / ticks, Formatting.AQUA));
+    }
+
+    private static void finalizeTickAllocationsReport(MinecraftServer server) {
+        double avgTickTime = 1e-6 * totalTickTime / ticksTotal;
+        float msptGoal = TickSpeed.getServerTickSpeed().msptGoal;
+        broadcast(server, t("carpet.profiler.title", formats("%.3f", getHeatmapColor(avgTickTime, msptGoal), avgTickTime)));
+        double perTick = (double) totalTickAllocated / ticksTotal;
+        double perSecond = totalTickTime == 0 ? 0 : totalTickAllocated / (totalTickTime * 1e-9);
+        broadcast(server, t("carpet.profiler.allocations.title", formatBytes(perTick, Formatting.AQUA), formatBytes(perSecond, Formatting.AQUA)));
+        long accumulated = 0;
+        Measurement global = MEASUREMENTS.get(null);
+        for (SectionType section : SectionType.GLOBAL) {
+            if (section == SectionType.GC || section == SectionType.UNKNOWN) continue;
+            long bytes = global.sectionAllocations[section.column];
+            accumulated += bytes;
+            if (bytes > 0) broadcast(server, t("carpet.profiler.allocations.section", section.getName(), formatBytes((double) bytes / ticksTotal, Formatting.AQUA)));
+        }
+        Object2LongMap<Pair<Measurement, Object>> allocations = new Object2LongOpenHashMap<>();
+        for (ServerWorld world : server.getWorlds()) {
+            Measurement measurement = MEASUREMENTS.get(world.getRegistryKey());
+            if (measurement == null) continue;
+            List<MutableText> messages = new ArrayList<>();
+            for (SectionType section : SectionType.PER_DIMENSION) {
+                long bytes = measurement.sectionAllocations[section.column];
+                accumulated += bytes;
+                if (bytes > 0) messages.add(c(s(" - "), t("carpet.profiler.allocations.section", section.getName(), formatBytes((double) bytes / ticksTotal, Formatting.AQUA))));
+            }
+            if (!messages.isEmpty()) {
+                broadcast(server, s(String.valueOf(world.getRegistryKey().getValue())));
+                for (MutableText msg : messages) broadcast(server, msg);
+            }
+            for (int id = 0; id < measurement.entityAllocations.size(); id++) {
+                long bytes = measurement.entityAllocations.get(id);
+                if (bytes != 0) allocations.put(new Pair<>(measurement, Registry.ENTITY_TYPE.get(id)), bytes);
+            }
+            for (int id = 0; id < measurement.blockEntityAllocations.size(); id++) {
+                long bytes = measurement.blockEntityAllocations.get(id);
+                if (bytes != 0) allocations.put(new Pair<>(measurement, Registry.BLOCK_ENTITY_TYPE.get(id)), bytes);
+            }
+        }
+        broadcast(server, t("carpet.profiler.allocations.section", SectionType.UNKNOWN.getName(), formatBytes((double) (totalTickAllocated - accumulated) / ticksTotal, Formatting.AQUA)));
+        if (!allocations.isEmpty()) {
+            broadcast(server, t("carpet.profiler.allocations.top_10"));
+            allocations.object2LongEntrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()))
+                .limit(10)
+                .forEachOrdered(e -> broadcast(server, formatAllocations(e, ticksTotal)));
+        }
+        int gcCount = global.sectionCount[SectionType.GC.column];
+        double gcTime = global.sections[SectionType.GC.column] * 1e-6;
+        broadcast(server, t("carpet.profiler.allocations.gc", formats("%d", Formatting.AQUA, gcCount), formats("%.0f", Formatting.AQUA, gcTime)));
+    }
+
+    private static String getTraceName(Object key) {
+        if (key instanceof SectionType) return ((SectionType) key).name().toLowerCase(Locale.ROOT);
+        if (key instanceof EntityType) return String.valueOf(EntityType.getId((EntityType<?>) key));
+        if (key instanceof BlockEntityType) return String.valueOf(BlockEntityType.getId((BlockEntityType<?>) key));
+        return String.valueOf(key);
+    }
+
+    private static String getTraceCategory(Object key) {
+        if (key instanceof SectionType) return "section";
+        if (key instanceof EntityType) return "entity";
+        if (key instanceof BlockEntityType) return "block_entity";
+        return "tick";
+    }
+
+    private static void finalizeTraceReport(MinecraftServer server) {
+        TraceRecorder recorder = trace;
+        trace = null;
+        if (recorder == null) return;
+        String name = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss", Locale.ROOT).format(new Date()) + ".json";
+        Path file = server.getSavePath(TRACES).resolve(name);
+        CompletableFuture.runAsync(() -> {
+            try {
+                Files.createDirectories(file.getParent());
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    recorder.write(writer, k -> k == null ? "server" : String.valueOf(((RegistryKey<?>) k).getValue()), CarpetProfiler::getTraceName, CarpetProfiler::getTraceCategory);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.getMainWorkerExecutor()).whenComplete((result, e) -> server.execute(() -> {
+            if (e != null) {
+                LOGGER.error("Could not write trace to {}", file, e);
+                broadcast(server, ts("carpet.profiler.trace.failed", Formatting.RED, name));
+                return;
+            }
+            broadcast(server, t("carpet.profiler.trace.written", recorder.size(), s(TRACES.getRelativePath() + "/" + name, Formatting.UNDERLINE)));
+            if (recorder.getDropped() > 0) broadcast(server, ts("carpet.profiler.trace.dropped", Formatting.GOLD, recorder.getDropped(), recorder.getCapacity()));
+        }));
+    }
+
+    private static void captureSpike(MinecraftServer server, Frame frame) {
+        List<MutableText> report = new ArrayList<>();
+        List<MutableText> previous = new ArrayList<>();
+        for (int i = SPIKE_FRAMES - 1; i > 0; i--) {
+            Frame f = spikeFrames[(spikeFrameIndex + SPIKE_FRAMES - i) % SPIKE_FRAMES];
+            if (f == null || f.tickTime == 0) continue;
+            previous.add(formats("%.1f", getHeatmapColor(f.tickTime / 1e6, TickSpeed.getServerTickSpeed().msptGoal), f.tickTime / 1e6));
+        }
+        report.add(t("carpet.profiler.spike.previous", join(s(", "), previous)));
+        report.addAll(formatHealthReport(server, frame.measurements, 1, frame.tickTime));
+        report.addAll(formatEntitiesReport(frame.measurements, 1));
+        LagSpike spike = new LagSpike(++lastSpikeId, frame.tick, frame.tickTime, report);
+        SPIKES.addLast(spike);
+        while (SPIKES.size() > MAX_SPIKES) SPIKES.removeFirst();
+        Loggers.LAG_SPIKES.log(() -> new MutableText[]{spike.format()}, () -> Arrays.asList(
+            new LogParameter("id", spike.id),
+            new LogParameter("tick", spike.tick),
+            new LogParameter("duration", spike.tickTime / 1e6)
+        ));
+    }
+
+    public static Collection<LagSpike> getLagSpikes() {
+        return Collections.unmodifiableCollection(SPIKES);
+    }
+
+    @Nullable
+    public static LagSpike getLagSpike(int id) {
+        for (LagSpike spike : SPIKES) {
+            if (spike.id == id) return spike;
+        }
+        return null;
     }
 
     public static void init() {
@@ -329,7 +1814,7 @@ public class CarpetProfiler
         }
     }
 
-    private static List<LogParameter> getCommandParameters(GarbageCollectionNotificationInfo info) {
+    private static List<LogParameter> getCommandParameters(GarbageCollectionNotificationInfo info, long allocatedSinceLastGC) {
         List<LogParameter> params = new ArrayList<>();
         GcInfo gcInfo = info.getGcInfo();
         params.add(new LogParameter("action", info.getGcAction()));
@@ -338,6 +1823,7 @@ public class CarpetProfiler
         params.add(new LogParameter("start_time", gcInfo.getStartTime()));
         params.add(new LogParameter("end_time", gcInfo.getEndTime()));
         params.add(new LogParameter("duration", gcInfo.getDuration()));
+        params.add(new LogParameter("server_thread.allocated", allocatedSinceLastGC));
         for (Map.Entry<String, MemoryUsage> e : gcInfo.getMemoryUsageBeforeGc().entrySet()) {
             MemoryUsage m = e.getValue();
             params.add(new LogParameter("before." + e.getKey() + ".used", m.getUsed()));
@@ -359,6 +1845,13 @@ public class CarpetProfiler
         if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
         GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
         GcInfo gcInfo = info.getGcInfo();
+        long allocatedSinceLastGC = 0;
+        if (serverThreadId >= 0) {
+            long allocated = AllocationCounter.getAllocatedBytes(serverThreadId);
+            allocatedSinceLastGC = lastGCAllocated == 0 ? 0 : allocated - lastGCAllocated;
+            lastGCAllocated = allocated;
+        }
+        long serverAllocated = allocatedSinceLastGC;
         Loggers.GC.log(() -> {
             long usedBefore = gcInfo.getMemoryUsageBeforeGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
             long usedAfter = gcInfo.getMemoryUsageAfterGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
@@ -370,9 +1863,18 @@ public class CarpetProfiler
                 s(", "), s(usedBefore / (1024 * 1024) + "MB", Formatting.AQUA),
                 s(" -> "), s(usedAfter / (1024 * 1024) + "MB", Formatting.AQUA)
             )};
-        }, () -> getCommandParameters(info));
+        }, () -> getCommandParameters(info, serverAllocated));
+        QuickCarpet.PUBSUB.publish(GC_DURATION_NODE, gcInfo.getDuration());
         if (inTick) {
-            if (!isActive(ReportType.HEALTH)) return;
+            Frame frame = spikeFrame;
+            if (frame != null) {
+                for (Measurement m : frame.measurements.values()) m.gc(gcInfo.getDuration());
+            }
+            if (Settings.continuousProfiling) {
+                getHistory(null).gc(gcInfo.getDuration());
+                for (History h : HISTORY.values()) h.gc(gcInfo.getDuration());
+            }
+            if (reportType == null || !reportType.sections) return;
             for (Measurement m : MEASUREMENTS.values()) {
                 if (m == null) continue;
                 m.gc(gcInfo.getDuration());
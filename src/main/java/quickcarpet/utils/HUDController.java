@@ -1,5 +1,6 @@
 package quickcarpet.utils;
 
+import com.google.common.base.Suppliers;
 import net.minecraft.entity.SpawnGroup;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.packet.s2c.play.PlayerListHeaderS2CPacket;
@@ -25,6 +26,8 @@ import quickcarpet.mixin.accessor.PlayerListHeaderS2CPacketAccessor;
 
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static quickcarpet.utils.Messenger.*;
 
@@ -80,13 +83,19 @@ public class HUDController {
         double MSPT = tickSpeed.getCurrentMSPT();
         double TPS = tickSpeed.calculateTPS(MSPT);
         Formatting color = getHeatmapColor(MSPT, tickSpeed.msptGoal);
+        // built on first use, shared by all parameters and players of this update
+        Supplier<TickSpeed.MSPTStatistics> minute = Suppliers.memoize(() -> tickSpeed.getMSPTStats(1200));
         MutableText[] message = {c(
             s("TPS: ", Formatting.GRAY), formats("%.1f", color, TPS),
             s(" MSPT: ", Formatting.GRAY), formats("%.1f", color, MSPT)
         )};
         logger.log(() -> message, () -> Arrays.asList(
             new LogParameter("MSPT", tickSpeed::getCurrentMSPT),
-            new LogParameter("TPS", tickSpeed::getTPS)
+            new LogParameter("TPS", tickSpeed::getTPS),
+            new LogParameter("pacingError", tickSpeed::getPacingError),
+            new LogParameter("MSPT.1m.p50", () -> minute.get().percentile50),
+            new LogParameter("MSPT.1m.p99", () -> minute.get().percentile99),
+            new LogParameter("MSPT.1m.max", () -> minute.get().max)
         ));
     }
 
@@ -134,12 +143,32 @@ public class HUDController {
         }, () -> HopperCounter.COMMAND_PARAMETERS);
     }
 
+    private static <K> MutableText formatPackets(List<PacketCounter.Entry<K>> entries, Function<K, String> name) {
+        List<MutableText> components = new ArrayList<>();
+        for (PacketCounter.Entry<K> e : entries.subList(0, Math.min(3, entries.size()))) {
+            if (!components.isEmpty()) components.add(s(" "));
+            components.add(s(name.apply(e.key) + ": ", Formatting.GRAY));
+            components.add(s(Long.toString(e.count)));
+            components.add(s("/", Formatting.GRAY));
+            components.add(CarpetProfiler.formatBytes(e.bytes, Formatting.AQUA));
+        }
+        return c(components.toArray(new MutableText[0]));
+    }
+
     private static void logPackets(Logger logger) {
-        logger.log(() -> {
-            PacketCounter.reset();
-            return new MutableText[]{
-                s("I/" + PacketCounter.getPreviousIn() + " O/" + PacketCounter.getPreviousOut()),
-            };
+        PacketCounter.reset();
+        PacketCounter.Window window = PacketCounter.getPreviousSecond();
+        logger.log(option -> {
+            switch (option) {
+                case "types":
+                    return new MutableText[]{formatPackets(window.getOutByType(), PacketCounter::getName)};
+                case "players":
+                    return new MutableText[]{formatPackets(window.getOutByPlayer(), Function.identity())};
+                default:
+                    return new MutableText[]{
+                        s("I/" + PacketCounter.getPreviousIn() + " O/" + PacketCounter.getPreviousOut()),
+                    };
+            }
         }, () -> Arrays.asList(
             new LogParameter("in", PacketCounter::getPreviousIn),
             new LogParameter("out", PacketCounter::getPreviousOut)
@@ -0,0 +1,46 @@
+package quickcarpet.utils.profiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Per-thread allocation counters of HotSpot-based VMs ({@code com.sun.management.ThreadMXBean}).
+ * The counters are monotonic, so allocations of a section are the difference of two readings.
+ */
+public final class AllocationCounter {
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private AllocationCounter() {}
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("com.sun.management.ThreadMXBean");
+            if (!(BEAN instanceof com.sun.management.ThreadMXBean)) return false;
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) BEAN;
+            if (!bean.isThreadAllocatedMemorySupported()) return false;
+            if (!bean.isThreadAllocatedMemoryEnabled()) bean.setThreadAllocatedMemoryEnabled(true);
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId()) >= 0;
+        } catch (ClassNotFoundException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @param threadId Id of a live thread
+     * @return Total bytes allocated by that thread, or 0 if unavailable
+     */
+    public static long getAllocatedBytes(long threadId) {
+        if (!AVAILABLE) return 0;
+        long bytes = ((com.sun.management.ThreadMXBean) BEAN).getThreadAllocatedBytes(threadId);
+        return Math.max(bytes, 0);
+    }
+
+    public static long getAllocatedBytes() {
+        return getAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,45 @@
+package quickcarpet.utils.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Dense counters indexed by raw registry id, grown on demand.
+ * Replaces per-type hash maps on the profiler hot path.
+ */
+public final class IdCounters {
+    private long[] values;
+    /**
+     * Exclusive upper bound of the ids written since the last {@link #clear()}
+     */
+    private int used;
+
+    public IdCounters(int initialSize) {
+        this.values = new long[Math.max(initialSize, 1)];
+    }
+
+    public void add(int id, long value) {
+        if (id < 0) return;
+        if (id >= values.length) values = Arrays.copyOf(values, Math.max(values.length * 2, id + 1));
+        values[id] += value;
+        if (id >= used) used = id + 1;
+    }
+
+    public long get(int id) {
+        return id >= 0 && id < values.length ? values[id] : 0;
+    }
+
+    /**
+     * @return Exclusive upper bound of the ids that may have a non-zero value
+     */
+    public int size() {
+        return used;
+    }
+
+    /**
+     * Only clears the ids up to the highest one written, so clearing unused counters is free
+     */
+    public void clear() {
+        Arrays.fill(values, 0, used, 0);
+        used = 0;
+    }
+}
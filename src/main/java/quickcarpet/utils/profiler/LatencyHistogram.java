@@ -0,0 +1,121 @@
+package quickcarpet.utils.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative long values (HDR-style).
+ * Every power of two is split into {@value #SUB_BUCKET_HALF_COUNT} linear buckets,
+ * so recorded values are accurate to about 3% while the whole range of {@code long} fits
+ * into a fixed array that can be merged and reset without allocating.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT + SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long totalValue;
+    private double totalSquares;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return (long) (index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return lowestValueAt(index) + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+        totalSquares += (double) value * value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        totalSquares += other.totalSquares;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        totalSquares = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getTotalValue() {
+        return totalValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    public double getStdDev() {
+        if (totalCount == 0) return 0;
+        double mean = getMean();
+        return Math.sqrt(Math.max(totalSquares / totalCount - mean * mean, 0));
+    }
+
+    /**
+     * @return The number of recorded values in buckets entirely above {@code value}
+     */
+    public long getCountAbove(long value) {
+        if (value < 0) return totalCount;
+        long count = 0;
+        for (int i = indexOf(value) + 1; i < BUCKET_COUNT; i++) count += counts[i];
+        return count;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile Percentile in the range [0, 100]
+     * @return The highest value equivalent to the value at the given percentile, capped at the maximum recorded value
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * totalCount);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(highestValueAt(i), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,48 @@
+package quickcarpet.utils.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Exponentially decayed moving averages over several horizons, like the Unix load average.
+ * Every sample is weighted by the wall time since the previous one, so the horizons are
+ * real minutes regardless of the tick rate.
+ */
+public final class LoadAverage {
+    /**
+     * Horizons in minutes
+     */
+    public static final int[] HORIZONS = {1, 5, 15, 60};
+
+    private final double[] averages = new double[HORIZONS.length];
+    private long lastSample;
+
+    /**
+     * @param value Sampled value
+     * @param now Time of the sample from {@link System#nanoTime()}
+     */
+    public void sample(double value, long now) {
+        if (lastSample == 0) {
+            Arrays.fill(averages, value);
+            lastSample = now;
+            return;
+        }
+        double elapsed = now - lastSample;
+        lastSample = now;
+        for (int i = 0; i < averages.length; i++) {
+            double decay = Math.exp(-elapsed / (HORIZONS[i] * 60e9));
+            averages[i] = averages[i] * decay + value * (1 - decay);
+        }
+    }
+
+    /**
+     * @param horizon Index into {@link #HORIZONS}
+     */
+    public double get(int horizon) {
+        return averages[horizon];
+    }
+
+    public void reset() {
+        Arrays.fill(averages, 0);
+        lastSample = 0;
+    }
+}
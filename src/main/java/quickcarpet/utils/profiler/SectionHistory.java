@@ -0,0 +1,75 @@
+package quickcarpet.utils.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring buffer of per-tick section timings.
+ * Sections are addressed by column index, timings for the running tick are accumulated
+ * in {@link #add(int, long)} and moved into the ring by {@link #commit()}.
+ */
+public final class SectionHistory {
+    private final int columns;
+    private final int capacity;
+    private final long[] history;
+    private final long[] current;
+    private int head;
+    private int size;
+
+    public SectionHistory(int columns, int capacity) {
+        this.columns = columns;
+        this.capacity = capacity;
+        this.history = new long[columns * capacity];
+        this.current = new long[columns];
+    }
+
+    public void add(int column, long nanos) {
+        current[column] += nanos;
+    }
+
+    public void commit() {
+        System.arraycopy(current, 0, history, head * columns, columns);
+        Arrays.fill(current, 0);
+        head = (head + 1) % capacity;
+        if (size < capacity) size++;
+    }
+
+    public void clear() {
+        Arrays.fill(current, 0);
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return The number of ticks recorded, at most the capacity of the ring
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param column Section column
+     * @param ago 0 for the last committed tick, 1 for the one before etc.
+     * @return Time spent in the section during that tick
+     */
+    public long get(int column, int ago) {
+        if (ago < 0 || ago >= size) throw new IndexOutOfBoundsException("Tick " + ago + " not recorded");
+        int index = (head - 1 - ago + capacity) % capacity;
+        return history[index * columns + column];
+    }
+
+    public long getTotal(int column, int ticks) {
+        ticks = Math.min(ticks, size);
+        long total = 0;
+        for (int i = 0; i < ticks; i++) total += get(column, i);
+        return total;
+    }
+
+    public void addTo(LatencyHistogram histogram, int column, int ticks) {
+        ticks = Math.min(ticks, size);
+        for (int i = 0; i < ticks; i++) histogram.record(get(column, i));
+    }
+}
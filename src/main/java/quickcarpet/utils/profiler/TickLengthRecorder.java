@@ -0,0 +1,78 @@
+package quickcarpet.utils.profiler;
+
+/**
+ * Streaming recorder of tick lengths in bounded memory.
+ * The last {@value #RAW_TICKS} ticks are kept exactly, older ticks only as one
+ * {@link LatencyHistogram} per minute for the last hour and one per hour for the last day.
+ * Windows longer than {@value #RAW_TICKS} ticks are rounded up to whole minutes or hours.
+ */
+public final class TickLengthRecorder {
+    public static final int RAW_TICKS = 1200;
+    private static final int MINUTES = 60;
+    private static final int HOURS = 24;
+    private static final int HOUR_TICKS = RAW_TICKS * MINUTES;
+    public static final int MAX_TICKS = HOUR_TICKS * HOURS;
+
+    private final long[] raw = new long[RAW_TICKS];
+    private final LatencyHistogram[] minutes = new LatencyHistogram[MINUTES];
+    private final LatencyHistogram[] hours = new LatencyHistogram[HOURS];
+    private final LatencyHistogram currentHour = new LatencyHistogram();
+    /**
+     * Ticks recorded in total, {@code recorded % RAW_TICKS} is the position in the current minute
+     */
+    private long recorded;
+
+    public void record(long nanos) {
+        raw[(int) (recorded % RAW_TICKS)] = nanos;
+        recorded++;
+        if (recorded % RAW_TICKS != 0) return;
+        int minute = (int) ((recorded / RAW_TICKS - 1) % MINUTES);
+        LatencyHistogram histogram = minutes[minute];
+        if (histogram == null) histogram = minutes[minute] = new LatencyHistogram();
+        histogram.reset();
+        for (long value : raw) histogram.record(value);
+        currentHour.add(histogram);
+        if (recorded % HOUR_TICKS != 0) return;
+        int hour = (int) ((recorded / HOUR_TICKS - 1) % HOURS);
+        if (hours[hour] == null) hours[hour] = new LatencyHistogram();
+        hours[hour].reset();
+        hours[hour].add(currentHour);
+        currentHour.reset();
+    }
+
+    public long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * @param ticks Length of the window, ending with the last recorded tick
+     * @param out Histogram the window is added to
+     * @return The number of ticks added to {@code out}
+     */
+    public int addTo(LatencyHistogram out, int ticks) {
+        int available = (int) Math.min(recorded, MAX_TICKS);
+        ticks = Math.min(ticks, available);
+        if (ticks <= 0) return 0;
+        if (ticks <= RAW_TICKS) {
+            for (int i = 1; i <= ticks; i++) out.record(raw[(int) ((recorded - i) % RAW_TICKS)]);
+            return ticks;
+        }
+        int inMinute = (int) (recorded % RAW_TICKS);
+        for (int i = 1; i <= inMinute; i++) out.record(raw[(int) ((recorded - i) % RAW_TICKS)]);
+        int added = inMinute;
+        long completedMinutes = recorded / RAW_TICKS;
+        int minutesInHour = (int) (completedMinutes % MINUTES);
+        // whole minutes as long as they suffice, otherwise only those of the current hour followed by whole hours
+        int minuteLimit = ticks - added <= MINUTES * RAW_TICKS ? MINUTES : minutesInHour;
+        for (int i = 0; i < minuteLimit && i < completedMinutes && added < ticks; i++) {
+            out.add(minutes[(int) ((completedMinutes - 1 - i) % MINUTES)]);
+            added += RAW_TICKS;
+        }
+        long completedHours = recorded / HOUR_TICKS;
+        for (int i = 0; i < HOURS && i < completedHours && added < ticks; i++) {
+            out.add(hours[(int) ((completedHours - 1 - i) % HOURS)]);
+            added += HOUR_TICKS;
+        }
+        return added;
+    }
+}
@@ -0,0 +1,163 @@
+package quickcarpet.utils.profiler;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Records begin/end events into arrays allocated in chunks as needed and writes them in the
+ * <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">Chrome Trace Event format</a>.
+ * Event names and tracks are arbitrary keys that are only converted to strings when writing.
+ * Once the capacity is reached further events are dropped and counted.
+ */
+public final class TraceRecorder {
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final int capacity;
+    private final List<long[]> timestamps = new ArrayList<>();
+    private final List<int[]> names = new ArrayList<>();
+    private final List<int[]> tracks = new ArrayList<>();
+    private long[] chunkTimestamps;
+    private int[] chunkNames;
+    private int[] chunkTracks;
+    private final List<Object> nameKeys = new ArrayList<>();
+    private final Object2IntMap<Object> nameIds = new Object2IntOpenHashMap<>();
+    private final List<Object> trackKeys = new ArrayList<>();
+    private final Object2IntMap<Object> trackIds = new Object2IntOpenHashMap<>();
+    private final long start = System.nanoTime();
+    private int size;
+    private int dropped;
+
+    /**
+     * @param capacity Maximum number of events, memory is only allocated for the events recorded
+     */
+    public TraceRecorder(int capacity) {
+        this.capacity = capacity;
+        nameIds.defaultReturnValue(-1);
+        trackIds.defaultReturnValue(-1);
+    }
+
+    private static int intern(Object key, List<Object> keys, Object2IntMap<Object> ids) {
+        int id = ids.getInt(key);
+        if (id < 0) {
+            id = keys.size();
+            keys.add(key);
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return Whether there is room for another event, allocating a new chunk if needed
+     */
+    private boolean reserve() {
+        if (size == capacity) {
+            dropped++;
+            return false;
+        }
+        if ((size & (CHUNK_SIZE - 1)) == 0) {
+            timestamps.add(chunkTimestamps = new long[CHUNK_SIZE]);
+            names.add(chunkNames = new int[CHUNK_SIZE]);
+            tracks.add(chunkTracks = new int[CHUNK_SIZE]);
+        }
+        return true;
+    }
+
+    public void begin(Object track, Object name) {
+        if (!reserve()) return;
+        int i = size & (CHUNK_SIZE - 1);
+        chunkTimestamps[i] = System.nanoTime();
+        chunkNames[i] = intern(name, nameKeys, nameIds);
+        chunkTracks[i] = intern(track, trackKeys, trackIds) << 1;
+        size++;
+    }
+
+    public void end(Object track) {
+        if (!reserve()) return;
+        int i = size & (CHUNK_SIZE - 1);
+        chunkTimestamps[i] = System.nanoTime();
+        chunkNames[i] = -1;
+        chunkTracks[i] = intern(track, trackKeys, trackIds) << 1 | 1;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param out Destination of the JSON document, not closed
+     * @param trackName Display name of a track key
+     * @param eventName Display name of an event key
+     * @param category Category of an event key
+     */
+    public void write(Writer out, Function<Object, String> trackName, Function<Object, String> eventName, Function<Object, String> category) throws IOException {
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        for (int i = 0; i < trackKeys.size(); i++) {
+            if (i > 0) out.write(",\n");
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(i));
+            out.write(",\"args\":{\"name\":");
+            writeString(out, trackName.apply(trackKeys.get(i)));
+            out.write("}}");
+        }
+        String[] eventNames = new String[nameKeys.size()];
+        String[] categories = new String[nameKeys.size()];
+        for (int i = 0; i < eventNames.length; i++) {
+            eventNames[i] = eventName.apply(nameKeys.get(i));
+            categories[i] = category.apply(nameKeys.get(i));
+        }
+        for (int i = 0; i < size; i++) {
+            int chunk = i >> CHUNK_BITS;
+            int j = i & (CHUNK_SIZE - 1);
+            int track = tracks.get(chunk)[j];
+            int name = names.get(chunk)[j];
+            boolean end = (track & 1) != 0;
+            if (i > 0 || !trackKeys.isEmpty()) out.write(",\n");
+            out.write(end ? "{\"ph\":\"E\"" : "{\"ph\":\"B\",\"name\":");
+            if (!end) {
+                writeString(out, eventNames[name]);
+                out.write(",\"cat\":");
+                writeString(out, categories[name]);
+            }
+            out.write(",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(track >> 1));
+            out.write(",\"ts\":");
+            out.write(String.format(Locale.ROOT, "%.3f", (timestamps.get(chunk)[j] - start) / 1e3));
+            out.write('}');
+        }
+        out.write("\n]}\n");
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,106 @@
+package quickcarpet.pubsub;
+
+import net.minecraft.network.PacketByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static quickcarpet.pubsub.PubSubMessenger.PACKET_S2C_UPDATE_COMPACT;
+
+public class PubSubCodecTest {
+    private final PubSubManager pubSub = new PubSubManager();
+    private final PubSubNode count = pubSub.getOrCreateNode("test.count");
+    private final PubSubNode time = pubSub.getOrCreateNode("test.time");
+    private final PubSubNode name = pubSub.getOrCreateNode("test.name");
+    private final PubSubCodec.Encoder encoder = new PubSubCodec.Encoder();
+    private final PubSubCodec.Decoder decoder = new PubSubCodec.Decoder();
+
+    private Map<String, Object> roundTrip(Map<PubSubNode, Object> updates) {
+        PacketByteBuf buf = encoder.encode(updates);
+        if (buf == null) return Collections.emptyMap();
+        assertEquals(PACKET_S2C_UPDATE_COMPACT, buf.readVarInt());
+        Map<String, Object> decoded = decoder.decode(buf);
+        assertEquals(0, buf.readableBytes());
+        return decoded;
+    }
+
+    private static Map<PubSubNode, Object> updates(Object... nodesAndValues) {
+        Map<PubSubNode, Object> updates = new LinkedHashMap<>();
+        for (int i = 0; i < nodesAndValues.length; i += 2) updates.put((PubSubNode) nodesAndValues[i], nodesAndValues[i + 1]);
+        return updates;
+    }
+
+    @Test
+    void zigzag() {
+        for (int n : new int[]{0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(n, PubSubCodec.unzigzag(PubSubCodec.zigzag(n)));
+        }
+        for (long n : new long[]{0, -1, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(n, PubSubCodec.unzigzag(PubSubCodec.zigzag(n)));
+        }
+        assertEquals(1, PubSubCodec.zigzag(-1));
+        assertEquals(2, PubSubCodec.zigzag(1));
+    }
+
+    @Test
+    void deltasAndIds() {
+        Map<String, Object> first = roundTrip(updates(count, 1000, time, 5_000_000_000L, name, "a"));
+        assertEquals(1000, first.get("test.count"));
+        assertEquals(5_000_000_000L, first.get("test.time"));
+        assertEquals("a", first.get("test.name"));
+
+        PacketByteBuf buf = encoder.encode(updates(count, 999));
+        assertNotNull(buf);
+        // packet id, size, key, type and a one byte delta instead of the name and a four byte int
+        assertEquals(5, buf.readableBytes());
+        assertEquals(PACKET_S2C_UPDATE_COMPACT, buf.readVarInt());
+        assertEquals(Collections.singletonMap("test.count", 999), decoder.decode(buf));
+
+        Map<String, Object> second = roundTrip(updates(count, Integer.MIN_VALUE, time, Long.MAX_VALUE, name, "b"));
+        assertEquals(Integer.MIN_VALUE, second.get("test.count"));
+        assertEquals(Long.MAX_VALUE, second.get("test.time"));
+        assertEquals("b", second.get("test.name"));
+    }
+
+    @Test
+    void unchangedValuesOmitted() {
+        roundTrip(updates(count, 5, name, "a", time, 1.5));
+        assertNull(encoder.encode(updates(count, 5, name, "a")));
+        assertEquals(Collections.singletonMap("test.time", 2.5), roundTrip(updates(count, 5, time, 2.5)));
+    }
+
+    @Test
+    void forgottenValuesResent() {
+        roundTrip(updates(count, 5, name, "a"));
+        encoder.forget(count);
+        assertEquals(Collections.singletonMap("test.count", 5), roundTrip(updates(count, 5, name, "a")));
+        assertNull(encoder.encode(updates(count, 5)));
+        assertEquals(Collections.singletonMap("test.count", 6), roundTrip(updates(count, 6)));
+        encoder.forget(pubSub.getNode("test"));
+        Map<String, Object> resent = roundTrip(updates(count, 5, name, "a"));
+        assertEquals(5, resent.get("test.count"));
+        assertEquals("a", resent.get("test.name"));
+    }
+
+    @Test
+    void newEncoder() {
+        roundTrip(updates(count, 5, time, 7L));
+        PubSubCodec.Encoder restarted = new PubSubCodec.Encoder();
+        PacketByteBuf buf = restarted.encode(updates(time, 9L, count, 6));
+        assertNotNull(buf);
+        assertEquals(PACKET_S2C_UPDATE_COMPACT, buf.readVarInt());
+        Map<String, Object> decoded = decoder.decode(buf);
+        assertEquals(6, decoded.get("test.count"));
+        assertEquals(9L, decoded.get("test.time"));
+    }
+
+    @Test
+    void typeChange() {
+        roundTrip(updates(count, 7));
+        assertEquals(7L, roundTrip(updates(count, 7L)).get("test.count"));
+        assertEquals(3, roundTrip(updates(count, 3)).get("test.count"));
+    }
+}
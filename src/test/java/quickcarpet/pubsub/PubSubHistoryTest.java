@@ -0,0 +1,60 @@
+package quickcarpet.pubsub;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static quickcarpet.pubsub.PubSubHistory.Resolution.*;
+
+public class PubSubHistoryTest {
+    private final PubSubHistory history = new PubSubHistory();
+
+    private static void assertSample(int tick, double value, PubSubHistory.Sample sample) {
+        assertEquals(tick, sample.tick);
+        assertEquals(value, sample.value, 1e-9);
+    }
+
+    @Test
+    void wrapAround() {
+        int ticks = TICK.capacity + 50;
+        for (int t = 0; t < ticks; t++) history.record(t, t);
+        List<PubSubHistory.Sample> samples = history.getLatest(TICK, TICK.capacity + 1);
+        // the oldest buckets were overwritten, the newest one is still pending
+        assertEquals(TICK.capacity + 1, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            int tick = ticks - samples.size() + i;
+            assertSample(tick, tick, samples.get(i));
+        }
+        List<PubSubHistory.Sample> latest = history.getLatest(TICK, 3);
+        assertEquals(3, latest.size());
+        assertSample(ticks - 3, ticks - 3, latest.get(0));
+        assertSample(ticks - 1, ticks - 1, latest.get(2));
+    }
+
+    @Test
+    void bucketAveraging() {
+        for (int t = 0; t < 20; t++) history.record(t, t);
+        history.record(20, 100);
+        history.record(39, 200);
+        List<PubSubHistory.Sample> seconds = history.getLatest(SECOND, 5);
+        assertEquals(2, seconds.size());
+        assertSample(0, 9.5, seconds.get(0));
+        assertSample(20, 150, seconds.get(1));
+
+        List<PubSubHistory.Sample> minutes = history.getLatest(MINUTE, 5);
+        assertEquals(1, minutes.size());
+        assertSample(0, (190 + 300) / 22.0, minutes.get(0));
+    }
+
+    @Test
+    void sparseValues() {
+        // a node publishing every 20 ticks fills one tick bucket per publish
+        for (int t = 0; t < 100; t += 20) history.record(t, t);
+        List<PubSubHistory.Sample> samples = history.getLatest(TICK, 10);
+        assertEquals(5, samples.size());
+        assertSample(0, 0, samples.get(0));
+        assertSample(80, 80, samples.get(4));
+        assertEquals(0, history.getLatest(TICK, 0).size());
+    }
+}
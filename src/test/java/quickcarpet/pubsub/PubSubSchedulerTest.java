@@ -0,0 +1,115 @@
+package quickcarpet.pubsub;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PubSubSchedulerTest {
+    private static final int[] INTERVALS = {1, 2, 5, 20, 100};
+    private static final int TICKS = 1000;
+
+    private static class CountingCallback implements PubSubCallback {
+        final int interval;
+        final int phase;
+        int updates;
+        int polls;
+
+        CountingCallback(int interval, int phase) {
+            this.interval = interval;
+            this.phase = phase;
+        }
+
+        @Override
+        public boolean shouldUpdate(int tickCounter) {
+            polls++;
+            return tickCounter % interval == phase;
+        }
+
+        @Override
+        public void update(PubSubNode node) {
+            updates++;
+        }
+
+        @Override
+        public int getInterval() {
+            return interval;
+        }
+
+        @Override
+        public int getPhase() {
+            return phase;
+        }
+    }
+
+    @Test
+    void onlyDueCallbacksOfSubscribedBranches() {
+        PubSubManager pubSub = new PubSubManager();
+        List<List<CountingCallback>> branches = new ArrayList<>();
+        for (int b = 0; b < 4; b++) branches.add(new ArrayList<>());
+        for (int i = 0; i < 10000; i++) {
+            int interval = INTERVALS[i % INTERVALS.length];
+            CountingCallback cb = new CountingCallback(interval, i % interval);
+            pubSub.addCallback(pubSub.getOrCreateNode("branch" + (i % 4) + ".node" + i), cb);
+            branches.get(i % 4).add(cb);
+        }
+        PubSubSubscriber subscriber = (node, value) -> {};
+        for (int b = 1; b < 4; b++) pubSub.subscribe(pubSub.getNode("branch" + b), subscriber);
+        runTicks(pubSub);
+        assertUpdates(branches.get(0), false);
+        for (int b = 1; b < 4; b++) assertUpdates(branches.get(b), true);
+
+        pubSub.unsubscribe(pubSub.getNode("branch1"), subscriber);
+        for (List<CountingCallback> branch : branches) branch.forEach(cb -> cb.updates = 0);
+        runTicks(pubSub);
+        assertUpdates(branches.get(1), false);
+        assertUpdates(branches.get(2), true);
+    }
+
+    /**
+     * The tree walk this scheduler replaced asked every callback of every subscribed node each tick,
+     * the wheels only touch the callbacks that are due. JMH is not part of this build, so this compares
+     * the work done instead of timing it.
+     */
+    @Test
+    void lessWorkThanTreeWalk() {
+        PubSubManager pubSub = new PubSubManager();
+        List<CountingCallback> callbacks = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            int interval = INTERVALS[i % INTERVALS.length];
+            CountingCallback cb = new CountingCallback(interval, i % interval);
+            pubSub.addCallback(pubSub.getOrCreateNode("branch.node" + i), cb);
+            callbacks.add(cb);
+        }
+        pubSub.subscribe(pubSub.getNode("branch"), (node, value) -> {});
+        runTicks(pubSub);
+        long scheduled = 0;
+        for (CountingCallback cb : callbacks) {
+            assertEquals(0, cb.polls);
+            scheduled += cb.updates;
+            cb.updates = 0;
+        }
+        for (int t = 0; t < TICKS; t++) {
+            for (CountingCallback cb : callbacks) {
+                if (cb.shouldUpdate(t)) cb.update(null);
+            }
+        }
+        long walked = 0;
+        for (CountingCallback cb : callbacks) {
+            assertEquals(TICKS, cb.polls);
+            walked += cb.updates;
+        }
+        // same updates, but 10000 polls per tick for the walk versus none for the wheels
+        assertEquals(walked, scheduled);
+    }
+
+    private static void runTicks(PubSubManager pubSub) {
+        for (int t = 0; t < TICKS; t++) pubSub.update(t);
+    }
+
+    private static void assertUpdates(List<CountingCallback> callbacks, boolean subscribed) {
+        for (CountingCallback cb : callbacks) assertEquals(subscribed ? TICKS / cb.interval : 0, cb.updates);
+    }
+}
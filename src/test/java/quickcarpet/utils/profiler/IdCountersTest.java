@@ -0,0 +1,33 @@
+package quickcarpet.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IdCountersTest {
+    @Test
+    void clearOnlyWrittenIds() {
+        IdCounters counters = new IdCounters(4);
+        assertEquals(0, counters.size());
+        counters.add(2, 5);
+        counters.add(2, 3);
+        assertEquals(8, counters.get(2));
+        assertEquals(3, counters.size());
+        counters.clear();
+        assertEquals(0, counters.get(2));
+        assertEquals(0, counters.size());
+    }
+
+    @Test
+    void grow() {
+        IdCounters counters = new IdCounters(1);
+        counters.add(10, 1);
+        counters.add(-1, 1);
+        assertEquals(1, counters.get(10));
+        assertEquals(0, counters.get(-1));
+        assertEquals(0, counters.get(100));
+        assertEquals(11, counters.size());
+        counters.clear();
+        assertEquals(0, counters.get(10));
+    }
+}
@@ -0,0 +1,59 @@
+package quickcarpet.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    void bucketsAreContiguous() {
+        for (int i = 1; i < 900; i++) {
+            assertEquals(LatencyHistogram.highestValueAt(i - 1) + 1, LatencyHistogram.lowestValueAt(i), "bucket " + i);
+        }
+        for (long value : new long[] {0, 1, 31, 32, 33, 63, 64, 1000, 50_000_000, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.lowestValueAt(index) <= value, "lower bound of " + value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value, "upper bound of " + value);
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1000, histogram.getMin());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean(), 1e-9);
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.04);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.04);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void merge() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1_000_000);
+        a.add(b);
+        assertEquals(2, a.getTotalCount());
+        assertEquals(10, a.getMin());
+        assertEquals(1_000_000, a.getMax());
+        a.reset();
+        assertEquals(0, a.getTotalCount());
+        assertEquals(0, a.getValueAtPercentile(50));
+    }
+
+    @Test
+    void deviation() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 50; i++) {
+            histogram.record(40_000_000);
+            histogram.record(60_000_000);
+        }
+        assertEquals(10_000_000, histogram.getStdDev(), 1);
+        assertEquals(50, histogram.getCountAbove(50_000_000));
+    }
+}
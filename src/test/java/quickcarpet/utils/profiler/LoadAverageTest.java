@@ -0,0 +1,31 @@
+package quickcarpet.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoadAverageTest {
+    private static final long TICK = 50_000_000;
+
+    @Test
+    void decay() {
+        LoadAverage load = new LoadAverage();
+        long now = 1;
+        load.sample(10, now);
+        for (int i = 0; i < 1200; i++) load.sample(0, now += TICK);
+        assertEquals(10 / Math.E, load.get(0), 1e-6);
+        assertEquals(10 * Math.exp(-1 / 5.), load.get(1), 1e-6);
+        assertEquals(10 * Math.exp(-1 / 60.), load.get(3), 1e-6);
+    }
+
+    @Test
+    void independentOfTickRate() {
+        LoadAverage slow = new LoadAverage();
+        LoadAverage fast = new LoadAverage();
+        slow.sample(0, 1);
+        fast.sample(0, 1);
+        for (int i = 1; i <= 600; i++) slow.sample(20, 1 + i * TICK);
+        for (int i = 1; i <= 6000; i++) fast.sample(20, 1 + i * TICK / 10);
+        assertEquals(slow.get(0), fast.get(0), 1e-9);
+    }
+}
@@ -0,0 +1,30 @@
+package quickcarpet.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TickLengthRecorderTest {
+    @Test
+    void exactWindow() {
+        TickLengthRecorder recorder = new TickLengthRecorder();
+        for (int i = 1; i <= 2000; i++) recorder.record(i);
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(100, recorder.addTo(histogram, 100));
+        assertEquals(1901, histogram.getMin());
+        assertEquals(2000, histogram.getMax());
+    }
+
+    @Test
+    void roundedWindows() {
+        TickLengthRecorder recorder = new TickLengthRecorder();
+        int ticks = 2 * 60 * 1200 + 3 * 1200 + 10;
+        for (int i = 0; i < ticks; i++) recorder.record(i < 60 * 1200 ? 100 : 5);
+        LatencyHistogram lastMinutes = new LatencyHistogram();
+        assertEquals(10 + 5 * 1200, recorder.addTo(lastMinutes, 5 * 1200));
+        assertEquals(5, lastMinutes.getMax());
+        LatencyHistogram all = new LatencyHistogram();
+        assertEquals(ticks, recorder.addTo(all, TickLengthRecorder.MAX_TICKS));
+        assertEquals(60 * 1200, all.getCountAbove(5));
+    }
+}
@@ -0,0 +1,35 @@
+package quickcarpet.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TraceRecorderTest {
+    @Test
+    void chunksAndDropped() throws IOException {
+        int capacity = 40_000;
+        TraceRecorder recorder = new TraceRecorder(capacity);
+        for (int i = 0; i < capacity / 2 + 100; i++) {
+            recorder.begin("track", i % 2 == 0 ? "a" : "b");
+            recorder.end("track");
+        }
+        assertEquals(capacity, recorder.size());
+        assertEquals(200, recorder.getDropped());
+        StringWriter out = new StringWriter();
+        recorder.write(out, String::valueOf, String::valueOf, k -> "test");
+        String json = out.toString();
+        assertEquals(capacity / 2, count(json, "\"ph\":\"B\""));
+        assertEquals(capacity / 2, count(json, "\"ph\":\"E\""));
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\""));
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) count++;
+        return count;
+    }
+}